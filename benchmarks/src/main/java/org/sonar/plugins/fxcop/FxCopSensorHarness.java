@@ -0,0 +1,366 @@
+/*
+ * SonarQube FxCop Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.fxcop;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.component.Perspective;
+import org.sonar.api.component.ResourcePerspectives;
+import org.sonar.api.config.Settings;
+import org.sonar.api.issue.Issuable;
+import org.sonar.api.issue.Issue;
+import org.sonar.api.profiles.RulesProfile;
+import org.sonar.api.resources.AbstractLanguage;
+import org.sonar.api.resources.Language;
+import org.sonar.api.resources.Resource;
+import org.sonar.api.rules.Rule;
+import org.sonar.api.rules.RulePriority;
+import org.sonar.api.scan.filesystem.ModuleFileSystem;
+import org.sonar.plugins.fxcop.benchmarks.FxCopReportGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reproducible end-to-end measurement of {@link FxCopSensor#analyse(SensorContext, FileProvider, FxCopRulesetWriter, FxCopReportParser, FxCopExecutor)}.
+ *
+ * FxCopCmd is replaced by a shell script which sleeps for the given delay before copying a pre-generated report,
+ * and the SonarQube batch by in-memory fakes. Only runs on Unix-like systems.
+ *
+ * Usage: FxCopSensorHarness [fxCopCmdDelaySeconds] [repetitions]
+ */
+public class FxCopSensorHarness {
+
+  private static final String LANGUAGE_KEY = "cs";
+  private static final String REPOSITORY_KEY = "cs-fxcop";
+
+  private static final int[][] SCENARIOS = {
+    // issues, files, active rules
+    {10000, 100, 10},
+    {10000, 100, 250},
+    {100000, 100, 250},
+    {100000, 5000, 250},
+    {500000, 5000, 250},
+    {500000, 5000, 1000}
+  };
+
+  private final File workDir;
+  private final double fxCopCmdDelaySeconds;
+
+  public FxCopSensorHarness(File workDir, double fxCopCmdDelaySeconds) {
+    this.workDir = workDir;
+    this.fxCopCmdDelaySeconds = fxCopCmdDelaySeconds;
+  }
+
+  public static void main(String[] args) throws IOException {
+    double delay = args.length > 0 ? Double.parseDouble(args[0]) : 0;
+    int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+    File workDir = Files.createTempDir();
+    FxCopSensorHarness harness = new FxCopSensorHarness(workDir, delay);
+
+    System.out.println(String.format("%8s %6s %6s | %9s %9s %9s %9s %9s | %9s", "issues", "files", "rules", "total", "ruleset", "fxcopcmd", "parse", "submit", "submitted"));
+    for (int[] scenario : SCENARIOS) {
+      Measure best = null;
+      for (int i = 0; i < repetitions; i++) {
+        Measure measure = harness.run(scenario[0], scenario[1], scenario[2]);
+        if (best == null || measure.totalNanos < best.totalNanos) {
+          best = measure;
+        }
+      }
+      System.out.println(String.format("%8d %6d %6d | %7dms %7dms %7dms %7dms %7dms | %9d", scenario[0], scenario[1], scenario[2],
+        millis(best.totalNanos), millis(best.rulesetNanos), millis(best.executorNanos), millis(best.parseNanos), millis(best.submitNanos), best.submittedIssues));
+    }
+
+    System.out.println("Best of " + repetitions + " runs, FxCopCmd stub delay: " + delay + "s, parse excludes submit. Work directory: " + workDir.getAbsolutePath());
+  }
+
+  public Measure run(int issues, int files, int activeRules) throws IOException {
+    File scenarioDir = new File(workDir, issues + "-" + files + "-" + activeRules);
+    File workingDir = new File(scenarioDir, "working-dir");
+    File report = new File(scenarioDir, "generated-report.xml");
+    File assembly = new File(scenarioDir, "MyLibrary.dll");
+    File fxCopCmd = new File(scenarioDir, "FxCopCmd.exe");
+
+    if (!report.isFile()) {
+      Files.createParentDirs(report);
+      int messagesPerTarget = Math.max(1, issues / 10 / 10);
+      new FxCopReportGenerator(10, messagesPerTarget, issues / 10 / messagesPerTarget, files, Math.min(activeRules, 250)).write(report);
+      Files.write("assembly", assembly, Charsets.UTF_8);
+      Files.write("pdb", new File(FxCopConfiguration.pdbPath(assembly.getPath())), Charsets.UTF_8);
+      writeStubFxCopCmd(fxCopCmd, report);
+    }
+    if (!workingDir.isDirectory() && !workingDir.mkdirs()) {
+      throw new IOException("Unable to create " + workingDir.getAbsolutePath());
+    }
+    // Otherwise the sensor would reuse the report of the previous run
+    new File(workingDir, "fxcop-report.fingerprint").delete();
+
+    Settings settings = new Settings();
+    settings.setProperty("sonar.cs.fxcop.assembly", assembly.getAbsolutePath());
+    settings.setProperty("sonar.cs.fxcop.fxCopCmdPath", fxCopCmd.getAbsolutePath());
+    settings.setProperty("sonar.cs.fxcop.timeoutMinutes", 10);
+    FxCopConfiguration fxCopConf = new FxCopConfiguration(LANGUAGE_KEY, REPOSITORY_KEY, "sonar.cs.fxcop.assembly", "sonar.cs.fxcop.fxCopCmdPath",
+      "sonar.cs.fxcop.timeoutMinutes", "sonar.cs.fxcop.aspnet", "sonar.cs.fxcop.directories", "sonar.cs.fxcop.references");
+
+    Measure measure = new Measure();
+    InMemoryIssuable issuable = new InMemoryIssuable();
+    FxCopSensor sensor = new FxCopSensor(fxCopConf, settings, profile(activeRules), fileSystem(workingDir), perspectives(issuable));
+
+    long start = System.nanoTime();
+    sensor.analyse(null, new InMemoryFileProvider(), new TimedRulesetWriter(measure), new TimedReportParser(measure), new TimedExecutor(measure));
+    measure.totalNanos = System.nanoTime() - start;
+    // Issues are mapped and submitted both while the reports are parsed and once they are all read
+    measure.submitNanos = measure.totalNanos - measure.rulesetNanos - measure.executorNanos - measure.parseNanos;
+    measure.submittedIssues = issuable.issues().size();
+
+    return measure;
+  }
+
+  private void writeStubFxCopCmd(File fxCopCmd, File report) throws IOException {
+    Files.write(
+      "#!/bin/sh\n"
+        + "sleep " + fxCopCmdDelaySeconds + "\n"
+        + "for arg in \"$@\"; do\n"
+        + "  case \"$arg\" in\n"
+        + "    /out:*) out=\"${arg#/out:}\" ;;\n"
+        + "  esac\n"
+        + "done\n"
+        + "cp \"" + report.getAbsolutePath() + "\" \"$out\"\n",
+      fxCopCmd, Charsets.UTF_8);
+    if (!fxCopCmd.setExecutable(true)) {
+      throw new IOException("Unable to make " + fxCopCmd.getAbsolutePath() + " executable");
+    }
+  }
+
+  private static RulesProfile profile(int activeRules) {
+    RulesProfile profile = RulesProfile.create("Harness", LANGUAGE_KEY);
+    for (int i = 0; i < activeRules; i++) {
+      String checkId = FxCopReportGenerator.checkId(i);
+      profile.activateRule(Rule.create(REPOSITORY_KEY, "_" + checkId, checkId).setConfigKey(checkId), RulePriority.MAJOR);
+    }
+    return profile;
+  }
+
+  private static long millis(long nanos) {
+    return nanos / 1000000;
+  }
+
+  public static class Measure {
+
+    long totalNanos;
+    long rulesetNanos;
+    long executorNanos;
+    long parseNanos;
+    long submitNanos;
+    int submittedIssues;
+
+  }
+
+  private static class TimedRulesetWriter extends FxCopRulesetWriter {
+
+    private final Measure measure;
+
+    public TimedRulesetWriter(Measure measure) {
+      this.measure = measure;
+    }
+
+    @Override
+    public void write(List<String> ruleConfigKeys, File file) {
+      long start = System.nanoTime();
+      super.write(ruleConfigKeys, file);
+      measure.rulesetNanos += System.nanoTime() - start;
+    }
+
+  }
+
+  private static class TimedExecutor extends FxCopExecutor {
+
+    private final Measure measure;
+
+    public TimedExecutor(Measure measure) {
+      this.measure = measure;
+    }
+
+    @Override
+    public void execute(String executable, String assemblies, File rulesetFile, File reportFile, FxCopTimeout timeout, boolean aspnet, List<String> directories,
+      List<String> references) {
+      long start = System.nanoTime();
+      super.execute(executable, assemblies, rulesetFile, reportFile, timeout, aspnet, directories, references);
+      measure.executorNanos += System.nanoTime() - start;
+    }
+
+  }
+
+  /**
+   * Measures the time spent in the parser itself, excluding the time spent in the sensor's handler, which maps and submits the issues.
+   * Both entry points used by the sensor hand the issues to the handler on the calling thread.
+   */
+  private static class TimedReportParser extends FxCopReportParser {
+
+    private final Measure measure;
+
+    public TimedReportParser(Measure measure) {
+      this.measure = measure;
+    }
+
+    @Override
+    public void parse(File file, FxCopIssueFilter filter, FxCopIssueHandler handler, int parallelism) {
+      TimedHandler timedHandler = new TimedHandler(handler);
+      long start = System.nanoTime();
+      super.parse(file, filter, timedHandler, parallelism);
+      measure.parseNanos += System.nanoTime() - start - timedHandler.nanos;
+    }
+
+    @Override
+    public void parse(List<File> files, FxCopIssueFilter filter, FxCopIssueHandler handler, int parallelism) {
+      TimedHandler timedHandler = new TimedHandler(handler);
+      long start = System.nanoTime();
+      super.parse(files, filter, timedHandler, parallelism);
+      measure.parseNanos += System.nanoTime() - start - timedHandler.nanos;
+    }
+
+  }
+
+  private static class TimedHandler implements FxCopIssueHandler {
+
+    private final FxCopIssueHandler handler;
+    private long nanos;
+
+    public TimedHandler(FxCopIssueHandler handler) {
+      this.handler = handler;
+    }
+
+    @Override
+    public void handle(FxCopIssue issue) {
+      long start = System.nanoTime();
+      handler.handle(issue);
+      nanos += System.nanoTime() - start;
+    }
+
+  }
+
+  private static class InMemoryFileProvider extends FileProvider {
+
+    private static final Language LANGUAGE = new AbstractLanguage(LANGUAGE_KEY, "C#") {
+      @Override
+      public String[] getFileSuffixes() {
+        return new String[] {"cs"};
+      }
+    };
+
+    public InMemoryFileProvider() {
+      super(null, null);
+    }
+
+    @Override
+    public org.sonar.api.resources.File fromIOFile(File file) {
+      return new org.sonar.api.resources.File(LANGUAGE, file.getParent(), file.getName());
+    }
+
+  }
+
+  private static class InMemoryIssuable implements Issuable {
+
+    private final List<Issue> issues = Lists.newArrayList();
+
+    @Override
+    public IssueBuilder newIssueBuilder() {
+      return proxy(IssueBuilder.class, new InvocationHandler() {
+        private final Map<String, Object> fields = Maps.newHashMap();
+
+        @Override
+        public Object invoke(Object builder, Method method, Object[] args) {
+          if ("build".equals(method.getName())) {
+            return proxy(Issue.class, new InvocationHandler() {
+              @Override
+              public Object invoke(Object issue, Method method, Object[] args) {
+                return fields.get(method.getName());
+              }
+            });
+          }
+          fields.put(method.getName(), args[0]);
+          return builder;
+        }
+      });
+    }
+
+    @Override
+    public boolean addIssue(Issue issue) {
+      return issues.add(issue);
+    }
+
+    @Override
+    public List<Issue> issues() {
+      return issues;
+    }
+
+    @Override
+    public List<Issue> resolvedIssues() {
+      return ImmutableList.of();
+    }
+
+    @Override
+    public org.sonar.api.component.Component component() {
+      throw new UnsupportedOperationException();
+    }
+
+  }
+
+  private static ResourcePerspectives perspectives(final Issuable issuable) {
+    return new ResourcePerspectives() {
+      @Override
+      public <P extends Perspective> P as(Class<P> perspectiveClass, Resource resource) {
+        return perspectiveClass.cast(issuable);
+      }
+
+      @Override
+      public <P extends Perspective> P as(Class<P> perspectiveClass, org.sonar.api.component.Component component) {
+        return perspectiveClass.cast(issuable);
+      }
+    };
+  }
+
+  private static ModuleFileSystem fileSystem(final File workingDir) {
+    return proxy(ModuleFileSystem.class, new InvocationHandler() {
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) {
+        if ("workingDir".equals(method.getName())) {
+          return workingDir;
+        }
+        throw new UnsupportedOperationException(method.getName());
+      }
+    });
+  }
+
+  private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+    return type.cast(Proxy.newProxyInstance(FxCopSensorHarness.class.getClassLoader(), new Class<?>[] {type}, handler));
+  }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * SonarQube FxCop Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.fxcop.benchmarks;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.io.Closeables;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Writes synthetic FxCop reports, shaped like the ones of FxCopCmd, of arbitrary size.
+ * The report is streamed to disk, so that reports of hundreds of megabytes can be generated.
+ */
+public class FxCopReportGenerator {
+
+  private final int targets;
+  private final int messagesPerTarget;
+  private final int issuesPerMessage;
+  private final int files;
+  private final int checkIds;
+
+  public FxCopReportGenerator(int targets, int messagesPerTarget, int issuesPerMessage, int files, int checkIds) {
+    this.targets = targets;
+    this.messagesPerTarget = messagesPerTarget;
+    this.issuesPerMessage = issuesPerMessage;
+    this.files = files;
+    this.checkIds = checkIds;
+  }
+
+  public int issues() {
+    return targets * messagesPerTarget * issuesPerMessage;
+  }
+
+  /**
+   * The i-th synthetic CheckId: CA1000, CA1001, ...
+   */
+  public static String checkId(int i) {
+    return "CA" + (1000 + i);
+  }
+
+  public static String path(int target) {
+    return "c:\\Projects\\Solution\\Project" + target;
+  }
+
+  public static String fileName(int file) {
+    return "Class" + file + ".cs";
+  }
+
+  public void write(File file) {
+    Writer writer = null;
+    try {
+      writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), Charsets.UTF_8), 64 * 1024);
+      write(writer);
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    } finally {
+      Closeables.closeQuietly(writer);
+    }
+  }
+
+  private void write(Writer writer) throws IOException {
+    writer.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+    writer.write("<FxCopReport Version=\"12.0\">\n");
+    writer.write(" <Targets>\n");
+
+    int message = 0;
+    int issue = 0;
+    for (int target = 0; target < targets; target++) {
+      writer.write("  <Target Name=\"" + path(target) + "\\bin\\Debug\\Project" + target + ".dll\">\n");
+      writer.write("   <Modules>\n");
+      writer.write("    <Module Name=\"project" + target + ".dll\">\n");
+      writer.write("     <Namespaces>\n");
+      writer.write("      <Namespace Name=\"Project" + target + "\">\n");
+      writer.write("       <Types>\n");
+      writer.write("        <Type Name=\"Class1\" Kind=\"Class\" Accessibility=\"Public\" ExternallyVisible=\"True\">\n");
+      writer.write("         <Members>\n");
+      writer.write("          <Member Name=\"#Add(System.Int32,System.Int32)\" Kind=\"Method\" Static=\"False\" Accessibility=\"Public\" ExternallyVisible=\"True\">\n");
+      writer.write("           <Messages>\n");
+
+      for (int i = 0; i < messagesPerTarget; i++) {
+        writer.write("            <Message TypeName=\"IdentifiersShouldBeSpelledCorrectly\" Category=\"Microsoft.Naming\" CheckId=\"" + checkId(message % checkIds)
+          + "\" Status=\"Active\" Created=\"2014-02-26 00:22:14Z\" FixCategory=\"Breaking\" BreaksBuild=\"True\">\n");
+        for (int j = 0; j < issuesPerMessage; j++) {
+          writer.write("             <Issue Name=\"MemberParameterMoreMeaningfulName\" Certainty=\"" + (25 + 5 * (issue % 15)) + "\" Level=\"CriticalWarning\" Path=\""
+            + path(target) + "\" File=\"" + fileName(issue % files) + "\" Line=\"" + (1 + issue % 1000) + "\">In method 'Class1.Add(int, int)', "
+            + "consider providing a more meaningful name than parameter name 'p" + issue + "'.</Issue>\n");
+          issue++;
+        }
+        writer.write("            </Message>\n");
+        message++;
+      }
+
+      writer.write("           </Messages>\n");
+      writer.write("          </Member>\n");
+      writer.write("         </Members>\n");
+      writer.write("        </Type>\n");
+      writer.write("       </Types>\n");
+      writer.write("      </Namespace>\n");
+      writer.write("     </Namespaces>\n");
+      writer.write("    </Module>\n");
+      writer.write("   </Modules>\n");
+      writer.write("  </Target>\n");
+    }
+
+    writer.write(" </Targets>\n");
+    writer.write(" <Rules>\n");
+    for (int i = 0; i < checkIds; i++) {
+      String checkId = checkId(i);
+      writer.write("  <Rule TypeName=\"IdentifiersShouldBeSpelledCorrectly\" Category=\"Microsoft.Naming\" CheckId=\"" + checkId + "\" BreaksBuild=\"True\">\n");
+      writer.write("   <Name>Identifiers should be spelled correctly</Name>\n");
+      writer.write("   <Description>The individual words that make up an identifier should not be abbreviated and should be spelled correctly.</Description>\n");
+      writer.write("   <Resolution Name=\"MemberParameterMoreMeaningfulName\">In method {0}, consider providing a more meaningful name than parameter name {1}.</Resolution>\n");
+      writer.write("  </Rule>\n");
+    }
+    writer.write(" </Rules>\n");
+    writer.write("</FxCopReport>\n");
+  }
+
+  /**
+   * Usage: FxCopReportGenerator &lt;report&gt; &lt;targets&gt; &lt;messagesPerTarget&gt; &lt;issuesPerMessage&gt; &lt;files&gt; &lt;checkIds&gt;
+   */
+  public static void main(String[] args) {
+    FxCopReportGenerator generator = new FxCopReportGenerator(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]), Integer.parseInt(args[4]),
+      Integer.parseInt(args[5]));
+    File report = new File(args[0]);
+    generator.write(report);
+    System.out.println("Wrote " + generator.issues() + " issues, " + report.length() + " bytes, to " + report.getAbsolutePath());
+  }
+
+}
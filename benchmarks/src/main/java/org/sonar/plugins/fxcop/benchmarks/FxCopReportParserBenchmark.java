@@ -0,0 +1,182 @@
+/*
+ * SonarQube FxCop Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.fxcop.benchmarks;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.sonar.plugins.fxcop.FxCopIssue;
+import org.sonar.plugins.fxcop.FxCopIssueFilter;
+import org.sonar.plugins.fxcop.FxCopIssueHandler;
+import org.sonar.plugins.fxcop.FxCopReportParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link FxCopReportParser} on synthetic reports.
+ * The "sensor" benchmarks go through the entry points used by the FxCopSensor, with a CheckId filter and a parallelism:
+ * a single report split on its targets, and several reports parsed concurrently. As in the sensor, reports smaller than the split
+ * threshold of the parser are parsed sequentially, whatever the parallelism.
+ *
+ * The "issues" secondary result is the number of parsed issues per second.
+ * Run with "-prof gc": "gc.alloc.rate.norm" is then the number of bytes allocated per parsed report,
+ * to be divided by the "issues" value printed at setup to get the bytes allocated per issue.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FxCopReportParserBenchmark {
+
+  @Param({"1", "20"})
+  public int targets;
+
+  @Param({"100", "1000"})
+  public int messagesPerTarget;
+
+  @Param({"1", "10"})
+  public int issuesPerMessage;
+
+  @Param({"100"})
+  public int files;
+
+  @Param({"8"})
+  public int checkIds;
+
+  @Param({"4"})
+  public int reports;
+
+  private File report;
+  private List<File> reportFiles;
+  private FxCopIssueFilter filter;
+  private final FxCopReportParser parser = new FxCopReportParser();
+
+  @Setup(Level.Trial)
+  public void generateReport() throws IOException {
+    report = File.createTempFile("fxcop-report", ".xml");
+    FxCopReportGenerator generator = new FxCopReportGenerator(targets, messagesPerTarget, issuesPerMessage, files, checkIds);
+    generator.write(report);
+    System.out.println();
+    System.out.println("Generated " + generator.issues() + " issues (" + report.length() + " bytes): " + report.getAbsolutePath());
+
+    reportFiles = Lists.newArrayList();
+    for (int i = 0; i < reports; i++) {
+      File copy = File.createTempFile("fxcop-report-" + i + "-", ".xml");
+      Files.copy(report, copy);
+      reportFiles.add(copy);
+    }
+
+    List<String> ruleConfigKeys = Lists.newArrayList();
+    for (int i = 0; i < checkIds; i++) {
+      ruleConfigKeys.add(FxCopReportGenerator.checkId(i));
+    }
+    filter = new FxCopIssueFilter(ruleConfigKeys, 0);
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteReport() {
+    delete(report);
+    for (File reportFile : reportFiles) {
+      delete(reportFile);
+    }
+  }
+
+  private static void delete(File file) {
+    if (!file.delete()) {
+      file.deleteOnExit();
+    }
+  }
+
+  /**
+   * Only the "sensor" benchmarks depend on the parallelism, the other ones are not run for each of its values.
+   */
+  @State(Scope.Benchmark)
+  public static class Parallelism {
+
+    @Param({"1", "2", "4"})
+    public int threads;
+
+  }
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class IssueCounter {
+
+    public long issues;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      issues = 0;
+    }
+
+  }
+
+  @Benchmark
+  public void streamed(IssueCounter counter, Blackhole blackhole) {
+    parser.parse(report, handler(counter, blackhole));
+  }
+
+  @Benchmark
+  public List<FxCopIssue> collected(IssueCounter counter) {
+    List<FxCopIssue> issues = parser.parse(report);
+    counter.issues += issues.size();
+    return issues;
+  }
+
+  @Benchmark
+  public void sensorSingleReport(Parallelism parallelism, IssueCounter counter, Blackhole blackhole) {
+    parser.parse(report, filter, handler(counter, blackhole), parallelism.threads);
+  }
+
+  @Benchmark
+  public void sensorReports(Parallelism parallelism, IssueCounter counter, Blackhole blackhole) {
+    parser.parse(reportFiles, filter, handler(counter, blackhole), parallelism.threads);
+  }
+
+  private static FxCopIssueHandler handler(final IssueCounter counter, final Blackhole blackhole) {
+    return new FxCopIssueHandler() {
+      @Override
+      public void handle(FxCopIssue issue) {
+        counter.issues++;
+        blackhole.consume(issue);
+      }
+    };
+  }
+
+}
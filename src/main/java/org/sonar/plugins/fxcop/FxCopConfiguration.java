@@ -20,24 +20,54 @@
 package org.sonar.plugins.fxcop;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.apache.commons.io.filefilter.WildcardFileFilter;
+import org.sonar.api.CoreProperties;
 import org.sonar.api.config.Settings;
 
+import javax.annotation.Nullable;
+
 import java.io.File;
+import java.io.FileFilter;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class FxCopConfiguration {
 
   private static final String DEPRECATED_FXCOPCMD_PATH_PROPERTY_KEY = "sonar.fxcop.installDirectory";
   private static final String DEPRECATED_TIMEOUT_MINUTES_PROPERTY_KEY = "sonar.fxcop.timeoutMinutes";
+  private static final int DEFAULT_REPORT_CACHE_MAX_SIZE_MB = 1024;
+  private static final String RUN_HISTORY_FILE_NAME = "fxcop-history.tsv";
+  private static final Pattern DURATION_PATTERN = Pattern.compile("(\\d+(?:\\.\\d+)?)\\s*(ms|s|m|h)?");
 
   private final String languageKey;
   private final String repositoryKey;
   private final String assemblyPropertyKey;
-  private String fxCopCmdPropertyKey;
-  private String timeoutPropertyKey;
+  private final String fxCopCmdPropertyKey;
+  private final String timeoutPropertyKey;
   private final String aspnetPropertyKey;
   private final String directoriesPropertyKey;
   private final String referencesPropertyKey;
+  private final String reportPathsPropertyKey;
+  private final String parallelismPropertyKey;
+  private final String minimumCertaintyPropertyKey;
+  private final String pipelinedPropertyKey;
+  private final String hostSlotsPropertyKey;
+  private final String hostSlotsDirectoryPropertyKey;
+  private final String adaptiveTimeoutPropertyKey;
+  private final String reportCacheDirectoryPropertyKey;
+  private final String reportCacheMaxSizePropertyKey;
+  private final String issueFilePropertyKey;
+  private final String runHistoryDirectoryPropertyKey;
 
+  /**
+   * The keys of the properties which are not given, such as "sonar.cs.fxcop.reportPaths", are derived from the language key.
+   */
   public FxCopConfiguration(String languageKey, String repositoryKey, String assemblyPropertyKey, String fxCopCmdPropertyKey, String timeoutPropertyKey, String aspnetPropertyKey,
     String directoriesPropertyKey, String referencesPropertyKey) {
     this.languageKey = languageKey;
@@ -48,6 +78,21 @@ public class FxCopConfiguration {
     this.aspnetPropertyKey = aspnetPropertyKey;
     this.directoriesPropertyKey = directoriesPropertyKey;
     this.referencesPropertyKey = referencesPropertyKey;
+    this.reportPathsPropertyKey = propertyKey("reportPaths");
+    this.parallelismPropertyKey = propertyKey("parallelism");
+    this.minimumCertaintyPropertyKey = propertyKey("minimumCertainty");
+    this.pipelinedPropertyKey = propertyKey("pipelined");
+    this.hostSlotsPropertyKey = propertyKey("hostSlots");
+    this.hostSlotsDirectoryPropertyKey = propertyKey("hostSlotsDirectory");
+    this.adaptiveTimeoutPropertyKey = propertyKey("adaptiveTimeout");
+    this.reportCacheDirectoryPropertyKey = propertyKey("reportCacheDirectory");
+    this.reportCacheMaxSizePropertyKey = propertyKey("reportCacheMaxSizeMb");
+    this.issueFilePropertyKey = propertyKey("issueFile");
+    this.runHistoryDirectoryPropertyKey = propertyKey("runHistoryDirectory");
+  }
+
+  private String propertyKey(String name) {
+    return "sonar." + languageKey + ".fxcop." + name;
   }
 
   public String languageKey() {
@@ -70,6 +115,26 @@ public class FxCopConfiguration {
     return timeoutPropertyKey;
   }
 
+  /**
+   * Property of the FxCopCmd executable in the given module settings: the deprecated one when only it is set.
+   * The keys are resolved for each module, as modules are analyzed concurrently and may not use the same properties.
+   */
+  public String fxCopCmdPropertyKey(Settings settings) {
+    return effectivePropertyKey(settings, fxCopCmdPropertyKey, DEPRECATED_FXCOPCMD_PATH_PROPERTY_KEY);
+  }
+
+  public String timeoutPropertyKey(Settings settings) {
+    return effectivePropertyKey(settings, timeoutPropertyKey, DEPRECATED_TIMEOUT_MINUTES_PROPERTY_KEY);
+  }
+
+  private static String effectivePropertyKey(Settings settings, String propertyKey, String deprecatedPropertyKey) {
+    return !settings.hasKey(propertyKey) && settings.hasKey(deprecatedPropertyKey) ? deprecatedPropertyKey : propertyKey;
+  }
+
+  public String fxCopCmdPath(Settings settings) {
+    return settings.getString(fxCopCmdPropertyKey(settings));
+  }
+
   public String aspnetPropertyKey() {
     return aspnetPropertyKey;
   }
@@ -82,11 +147,155 @@ public class FxCopConfiguration {
     return referencesPropertyKey;
   }
 
+  public String parallelismPropertyKey() {
+    return parallelismPropertyKey;
+  }
+
+  public String reportPathsPropertyKey() {
+    return reportPathsPropertyKey;
+  }
+
+  public String minimumCertaintyPropertyKey() {
+    return minimumCertaintyPropertyKey;
+  }
+
+  public String pipelinedPropertyKey() {
+    return pipelinedPropertyKey;
+  }
+
+  public String issueFilePropertyKey() {
+    return issueFilePropertyKey;
+  }
+
+  public String runHistoryDirectoryPropertyKey() {
+    return runHistoryDirectoryPropertyKey;
+  }
+
+  public String hostSlotsPropertyKey() {
+    return hostSlotsPropertyKey;
+  }
+
+  public String hostSlotsDirectoryPropertyKey() {
+    return hostSlotsDirectoryPropertyKey;
+  }
+
+  public String adaptiveTimeoutPropertyKey() {
+    return adaptiveTimeoutPropertyKey;
+  }
+
+  public String reportCacheDirectoryPropertyKey() {
+    return reportCacheDirectoryPropertyKey;
+  }
+
+  public String reportCacheMaxSizePropertyKey() {
+    return reportCacheMaxSizePropertyKey;
+  }
+
+  /**
+   * Cache of the reports shared by all the analyses using the same directory, or null if disabled.
+   */
+  @Nullable
+  public FxCopReportCache reportCache(Settings settings) {
+    String directory = settings.getString(reportCacheDirectoryPropertyKey);
+    if (directory == null) {
+      return null;
+    }
+
+    int maxSizeMb = settings.getInt(reportCacheMaxSizePropertyKey);
+    return new FxCopReportCache(new File(directory), (maxSizeMb > 0 ? maxSizeMb : DEFAULT_REPORT_CACHE_MAX_SIZE_MB) * 1024L * 1024L);
+  }
+
+  /**
+   * Durations of the previous FxCopCmd runs of the module. They are kept in its working directory, unless another directory is given:
+   * the working directory is often wiped between builds, and the adaptive timeout then never gets enough runs.
+   */
+  public FxCopRunHistory runHistory(Settings settings, File workingDir) {
+    String directory = settings.getString(runHistoryDirectoryPropertyKey);
+    if (directory == null) {
+      return new FxCopRunHistory(new File(workingDir, RUN_HISTORY_FILE_NAME));
+    }
+
+    // Modules sharing the directory each have their own history
+    String moduleKey = settings.getString(CoreProperties.PROJECT_KEY_PROPERTY);
+    String fileName = moduleKey == null ? RUN_HISTORY_FILE_NAME : ("fxcop-history-" + moduleKey.replaceAll("[^\\w.-]", "_") + ".tsv");
+    return new FxCopRunHistory(new File(directory, fileName));
+  }
+
+  /**
+   * Timeout of each FxCopCmd process. Plain numbers are minutes, as in the previous versions, and the "ms", "s", "m" and "h" units allow finer
+   * or coarser values: "90s" or "1.5" are both a minute and a half.
+   */
+  public long timeoutMillis(Settings settings) {
+    String timeoutPropertyKey = timeoutPropertyKey(settings);
+    String value = settings.getString(timeoutPropertyKey);
+    if (value == null) {
+      return 0;
+    }
+
+    Matcher matcher = DURATION_PATTERN.matcher(value.trim());
+    Preconditions.checkArgument(
+      matcher.matches(),
+      "The property \"" + timeoutPropertyKey + "\" must be a duration, either in minutes or followed by one of the \"ms\", \"s\", \"m\" and \"h\" units: " + value);
+
+    double amount = Double.parseDouble(matcher.group(1));
+    String unit = matcher.group(2);
+    long unitMillis;
+    if ("ms".equals(unit)) {
+      unitMillis = 1;
+    } else if ("s".equals(unit)) {
+      unitMillis = TimeUnit.SECONDS.toMillis(1);
+    } else if ("h".equals(unit)) {
+      unitMillis = TimeUnit.HOURS.toMillis(1);
+    } else {
+      unitMillis = TimeUnit.MINUTES.toMillis(1);
+    }
+    return Math.round(amount * unitMillis);
+  }
+
+  /**
+   * Host-wide limit on the number of concurrent FxCopCmd processes, shared by all the analyses using the same directory, or null if unlimited.
+   */
+  @Nullable
+  public FxCopProcessSlots processSlots(Settings settings) {
+    int slots = settings.getInt(hostSlotsPropertyKey);
+    if (slots <= 0) {
+      return null;
+    }
+
+    String directory = settings.getString(hostSlotsDirectoryPropertyKey);
+    return new FxCopProcessSlots(directory == null ? new File(System.getProperty("java.io.tmpdir"), "sonar-fxcop-slots") : new File(directory), slots);
+  }
+
+  /**
+   * Whether existing FxCop or Code Analysis reports are imported instead of executing FxCopCmd.
+   */
+  public boolean isReportImport(Settings settings) {
+    return settings.hasKey(reportPathsPropertyKey);
+  }
+
   public void checkProperties(Settings settings) {
-    checkMandatoryProperties(settings);
-    checkAssemblyProperty(settings);
-    checkFxCopCmdPathProperty(settings);
-    checkTimeoutProeprty(settings);
+    if (isReportImport(settings)) {
+      checkReportPathsProperty(settings);
+    } else {
+      checkMandatoryProperties(settings);
+      checkAssemblyProperty(settings);
+      checkFxCopCmdPathProperty(settings);
+      checkTimeoutProeprty(settings);
+    }
+  }
+
+  private void checkReportPathsProperty(Settings settings) {
+    List<String> reportPaths = expandPaths(settings.getString(reportPathsPropertyKey));
+    Preconditions.checkArgument(
+      !reportPaths.isEmpty(),
+      "No FxCop report matches \"" + settings.getString(reportPathsPropertyKey) + "\" provided by the property \"" + reportPathsPropertyKey + "\".");
+
+    for (String reportPath : reportPaths) {
+      File reportFile = new File(reportPath);
+      Preconditions.checkArgument(
+        reportFile.isFile(),
+        "Cannot find the FxCop report \"" + reportFile.getAbsolutePath() + "\" provided by the property \"" + reportPathsPropertyKey + "\".");
+    }
   }
 
   private void checkMandatoryProperties(Settings settings) {
@@ -98,8 +307,17 @@ public class FxCopConfiguration {
   }
 
   private void checkAssemblyProperty(Settings settings) {
-    String assemblyPath = settings.getString(assemblyPropertyKey);
+    List<String> assemblyPaths = assemblyPaths(settings.getString(assemblyPropertyKey));
+    Preconditions.checkArgument(
+      !assemblyPaths.isEmpty(),
+      "No assembly matches \"" + settings.getString(assemblyPropertyKey) + "\" provided by the property \"" + assemblyPropertyKey + "\".");
 
+    for (String assemblyPath : assemblyPaths) {
+      checkAssembly(assemblyPath);
+    }
+  }
+
+  private void checkAssembly(String assemblyPath) {
     File assemblyFile = new File(assemblyPath);
     Preconditions.checkArgument(
       assemblyFile.isFile(),
@@ -111,7 +329,56 @@ public class FxCopConfiguration {
       "Cannot find the .pdb file \"" + pdbFile.getAbsolutePath() + "\" inferred from the property \"" + assemblyPropertyKey + "\".");
   }
 
-  private static String pdbPath(String assemblyPath) {
+  /**
+   * Splits the comma-separated list of assemblies, and expands the wildcards ("*" and "?") used in their file names.
+   */
+  static List<String> assemblyPaths(@Nullable String property) {
+    return expandPaths(property);
+  }
+
+  /**
+   * Splits the comma-separated list of reports to import, and expands the wildcards ("*" and "?") used in their file names.
+   */
+  static List<String> reportPaths(@Nullable String property) {
+    return expandPaths(property);
+  }
+
+  private static List<String> expandPaths(@Nullable String property) {
+    ImmutableList.Builder<String> builder = ImmutableList.builder();
+
+    if (property != null) {
+      for (String path : Splitter.on(",").trimResults().omitEmptyStrings().split(property)) {
+        File file = new File(path);
+        if (file.getName().indexOf('*') == -1 && file.getName().indexOf('?') == -1) {
+          builder.add(path);
+        } else {
+          builder.addAll(expandWildcards(file));
+        }
+      }
+    }
+
+    return builder.build();
+  }
+
+  private static List<String> expandWildcards(File pattern) {
+    File directory = pattern.getAbsoluteFile().getParentFile();
+    File[] files = directory.listFiles((FileFilter) new WildcardFileFilter(pattern.getName()));
+    if (files == null) {
+      return ImmutableList.of();
+    }
+
+    List<String> result = Lists.newArrayList();
+    for (File file : files) {
+      if (file.isFile()) {
+        result.add(file.getPath());
+      }
+    }
+    Collections.sort(result);
+
+    return result;
+  }
+
+  static String pdbPath(String assemblyPath) {
     int i = assemblyPath.lastIndexOf('.');
     if (i == -1) {
       i = assemblyPath.length();
@@ -121,10 +388,7 @@ public class FxCopConfiguration {
   }
 
   private void checkFxCopCmdPathProperty(Settings settings) {
-    if (!settings.hasKey(fxCopCmdPropertyKey) && settings.hasKey(DEPRECATED_FXCOPCMD_PATH_PROPERTY_KEY)) {
-      fxCopCmdPropertyKey = DEPRECATED_FXCOPCMD_PATH_PROPERTY_KEY;
-    }
-
+    String fxCopCmdPropertyKey = fxCopCmdPropertyKey(settings);
     String value = settings.getString(fxCopCmdPropertyKey);
 
     File file = new File(value);
@@ -134,9 +398,7 @@ public class FxCopConfiguration {
   }
 
   private void checkTimeoutProeprty(Settings settings) {
-    if (!settings.hasKey(timeoutPropertyKey) && settings.hasKey(DEPRECATED_TIMEOUT_MINUTES_PROPERTY_KEY)) {
-      timeoutPropertyKey = DEPRECATED_TIMEOUT_MINUTES_PROPERTY_KEY;
-    }
+    timeoutMillis(settings);
   }
 
 }
@@ -20,21 +20,45 @@
 package org.sonar.plugins.fxcop;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.utils.command.Command;
+import org.sonar.api.utils.command.CommandException;
 import org.sonar.api.utils.command.CommandExecutor;
 
+import javax.annotation.Nullable;
+
 import java.io.File;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
 
 public class FxCopExecutor {
 
   private static final Logger LOG = LoggerFactory.getLogger(FxCopExecutor.class);
   private static final String EXECUTABLE = "FxCopCmd.exe";
 
-  public void execute(String executable, String assemblies, File rulesetFile, File reportFile, int timeout, boolean aspnet, List<String> directories, List<String> references) {
+  private final FxCopProcessSlots slots;
+
+  public FxCopExecutor() {
+    this(null);
+  }
+
+  /**
+   * When slots are given, each FxCopCmd process first waits for one of them to be free, in order to limit the number of processes on the host.
+   */
+  public FxCopExecutor(@Nullable FxCopProcessSlots slots) {
+    this.slots = slots;
+  }
+
+  public void execute(String executable, String assemblies, File rulesetFile, File reportFile, FxCopTimeout timeout, boolean aspnet, List<String> directories,
+    List<String> references) {
     Command command = Command.create(getExecutable(executable))
       .addArgument("/file:" + assemblies)
       .addArgument("/ruleset:=" + rulesetFile.getAbsolutePath())
@@ -54,17 +78,82 @@ public class FxCopExecutor {
       command.addArgument("/reference:" + reference);
     }
 
-    int exitCode = CommandExecutor.create().execute(
-      command,
-      TimeUnit.MINUTES.toMillis(timeout));
+    long timeoutMillis = timeout.millisFor(assemblies);
+    FxCopProcessSlots.Slot slot = slots == null ? null : slots.acquire(timeoutMillis);
+    int exitCode;
+    try {
+      try {
+        exitCode = run(command, assemblies, timeout, timeoutMillis);
+      } catch (CommandException e) {
+        if (!(e.getCause() instanceof TimeoutException) || timeoutMillis >= timeout.configuredMillis()) {
+          throw e;
+        }
 
-    LOG.info("FxCopCmd.exe ended with the exit code: " + exitCode);
+        // The killed run lasted at least the adaptive timeout, which widens the next ones even if this retry fails too
+        timeout.record(assemblies, timeoutMillis);
+        LOG.warn("FxCopCmd.exe exceeded the adaptive timeout of " + timeoutMillis + " ms, retrying with the configured timeout of " + timeout.configuredMillis()
+          + " ms.");
+        exitCode = run(command, assemblies, timeout, timeout.configuredMillis());
+      }
+    } finally {
+      if (slot != null) {
+        slot.release();
+      }
+    }
 
     Preconditions.checkState((exitCode & 1) == 0,
       "The execution of \"" + executable + "\" failed and returned " + exitCode
         + " as exit code. See http://msdn.microsoft.com/en-us/library/bb429400(v=vs.80).aspx for details.");
   }
 
+  private static int run(Command command, String assemblies, FxCopTimeout timeout, long timeoutMillis) {
+    long start = System.nanoTime();
+    int exitCode = CommandExecutor.create().execute(command, timeoutMillis);
+    long durationMillis = (System.nanoTime() - start) / 1000000;
+    timeout.record(assemblies, durationMillis);
+
+    LOG.info("FxCopCmd.exe ended with the exit code: " + exitCode + " after " + durationMillis + " ms");
+    return exitCode;
+  }
+
+  /**
+   * Runs one FxCopCmd process per assembly, at most "parallelism" at once, each one writing to the report file of the same index.
+   */
+  public void execute(final String executable, List<String> assemblies, final File rulesetFile, List<File> reportFiles, final FxCopTimeout timeout, final boolean aspnet,
+    final List<String> directories, final List<String> references, int parallelism) {
+    Preconditions.checkArgument(assemblies.size() == reportFiles.size(), "Expected one report file per assembly.");
+
+    int threads = Math.max(1, Math.min(parallelism, assemblies.size()));
+    LOG.info("Running FxCopCmd.exe on " + assemblies.size() + " assemblies, using up to " + threads + " concurrent processes.");
+
+    ExecutorService executorService = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Void>> futures = Lists.newArrayList();
+      for (int i = 0; i < assemblies.size(); i++) {
+        final String assembly = assemblies.get(i);
+        final File reportFile = reportFiles.get(i);
+        futures.add(executorService.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            execute(executable, assembly, rulesetFile, reportFile, timeout, aspnet, directories, references);
+            return null;
+          }
+        }));
+      }
+
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
   /**
    * Handles deprecated property: "installDirectory", which gives the path to the directory only.
    */
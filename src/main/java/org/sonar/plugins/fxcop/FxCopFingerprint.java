@@ -0,0 +1,106 @@
+/*
+ * SonarQube FxCop Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.fxcop;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.io.Closeables;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-1 digest of the inputs of an FxCopCmd execution.
+ */
+public class FxCopFingerprint {
+
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  private final MessageDigest digest;
+
+  public FxCopFingerprint() {
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  public FxCopFingerprint add(String value) {
+    digest.update(value.getBytes(Charsets.UTF_8));
+    digest.update((byte) 0);
+    return this;
+  }
+
+  /**
+   * Adds the path and the contents of the file, or a marker if it does not exist.
+   */
+  public FxCopFingerprint addContents(File file) {
+    add(file.getAbsolutePath());
+    return addContentsOnly(file);
+  }
+
+  /**
+   * Adds the contents of the file, or a marker if it does not exist, but not its path: copies of a file at different places are equal.
+   */
+  public FxCopFingerprint addContentsOnly(File file) {
+    if (!file.isFile()) {
+      return add("<missing>");
+    }
+
+    InputStream input = null;
+    try {
+      input = new FileInputStream(file);
+      byte[] buffer = new byte[64 * 1024];
+      int read;
+      while ((read = input.read(buffer)) != -1) {
+        digest.update(buffer, 0, read);
+      }
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    } finally {
+      Closeables.closeQuietly(input);
+    }
+
+    return add("<eof>");
+  }
+
+  /**
+   * Adds the path, the size and the last modification time of the file, which is cheaper than its contents.
+   */
+  public FxCopFingerprint addStamp(File file) {
+    return add(file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified());
+  }
+
+  public String hex() {
+    byte[] bytes = digest.digest();
+    char[] chars = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      chars[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+      chars[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xF];
+    }
+    return new String(chars);
+  }
+
+}
@@ -23,14 +23,26 @@ import javax.annotation.Nullable;
 
 public class FxCopIssue {
 
+  /**
+   * Value of the line of issues without any.
+   */
+  public static final int NO_LINE = Integer.MIN_VALUE;
+
   private final int reportLine;
   private final String ruleConfigKey;
   private final String path;
   private final String file;
-  private final Integer line;
+  private final int line;
   private final String message;
 
   public FxCopIssue(int reportLine, String ruleConfigKey, @Nullable String path, @Nullable String file, @Nullable Integer line, String message) {
+    this(reportLine, ruleConfigKey, path, file, line == null ? NO_LINE : line.intValue(), message);
+  }
+
+  /**
+   * The report parser shares the instances of the ruleConfigKey, path and file strings among issues.
+   */
+  public FxCopIssue(int reportLine, String ruleConfigKey, @Nullable String path, @Nullable String file, int line, String message) {
     this.reportLine = reportLine;
     this.ruleConfigKey = ruleConfigKey;
     this.path = path;
@@ -59,6 +71,17 @@ public class FxCopIssue {
 
   @Nullable
   public Integer line() {
+    return line == NO_LINE ? null : line;
+  }
+
+  public boolean hasLine() {
+    return line != NO_LINE;
+  }
+
+  /**
+   * The line without boxing, or {@link #NO_LINE}, which orders before all the lines.
+   */
+  public int lineOrNoLine() {
     return line;
   }
 
@@ -0,0 +1,416 @@
+/*
+ * SonarQube FxCop Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.fxcop;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+
+import javax.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+
+/**
+ * Compact binary file of the issues parsed from FxCop reports, which can be replayed much faster than the reports can be parsed again.
+ * <p>
+ * All the integers are big-endian. The file starts with a header: the "FXCI" magic number, the format version, the key given by the writer,
+ * as a length followed by UTF-8 bytes, the number of strings and the number of issues. The issues follow, after padding to a multiple of 4,
+ * as fixed-width records of 6 integers: the report line, the indexes of the CheckId, path, file and message in the string dictionary,
+ * -1 standing for none, and the line. The string dictionary comes last: the offsets of the strings and of the end of the last one,
+ * then the UTF-8 bytes of all the strings.
+ */
+public final class FxCopIssueFile {
+
+  private static final int MAGIC = 0x46584349;
+  private static final int VERSION = 2;
+  private static final int RECORD_INTS = 6;
+  private static final int NONE = -1;
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private FxCopIssueFile() {
+  }
+
+  /**
+   * Returns the reader of the file if it is an issue file of the current version written with the given key, or null otherwise.
+   * The file is only mapped once its key matches: a mapping can't be released before it is garbage collected, and prevents
+   * Windows from replacing or deleting the file, which is precisely what happens to an issue file written with another key.
+   */
+  @Nullable
+  public static Reader open(File file, String key) {
+    if (!file.isFile() || !key.equals(readKey(file))) {
+      return null;
+    }
+
+    Reader reader;
+    try {
+      reader = new Reader(file);
+    } catch (IllegalStateException e) {
+      return null;
+    }
+    return key.equals(reader.key()) ? reader : null;
+  }
+
+  @Nullable
+  private static String readKey(File file) {
+    DataInputStream input = null;
+    try {
+      input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+        return null;
+      }
+      int keyLength = input.readInt();
+      if (keyLength < 0 || keyLength > file.length()) {
+        return null;
+      }
+      byte[] keyBytes = new byte[keyLength];
+      input.readFully(keyBytes);
+      return new String(keyBytes, Charsets.UTF_8);
+    } catch (IOException e) {
+      return null;
+    } finally {
+      Closeables.closeQuietly(input);
+    }
+  }
+
+  /**
+   * Streams the handled issues into temporary files, and assembles them into the issue file once all of them were handled:
+   * only the CheckIds, paths and files, which are shared among issues, are kept in memory.
+   * An I/O error is reported by commit(), the issues handled after it are ignored.
+   */
+  public static class Writer implements FxCopIssueHandler, Closeable {
+
+    private final File file;
+    private final File temporaryFile;
+    private final File offsetsFile;
+    private final File stringsFile;
+    private final Map<String, Integer> sharedIndexes = Maps.newHashMap();
+    private DataOutputStream records;
+    private DataOutputStream offsets;
+    private DataOutputStream strings;
+    private int countsPosition;
+    private int stringCount;
+    private int size;
+    private IOException failure;
+    private boolean committed;
+
+    public Writer(File file, String key) throws IOException {
+      this.file = file;
+      this.temporaryFile = new File(file.getPath() + ".tmp");
+      this.offsetsFile = new File(file.getPath() + ".offsets.tmp");
+      this.stringsFile = new File(file.getPath() + ".strings.tmp");
+
+      boolean threw = true;
+      try {
+        records = open(temporaryFile);
+        offsets = open(offsetsFile);
+        strings = open(stringsFile);
+
+        byte[] keyBytes = key.getBytes(Charsets.UTF_8);
+        records.writeInt(MAGIC);
+        records.writeInt(VERSION);
+        records.writeInt(keyBytes.length);
+        records.write(keyBytes);
+        countsPosition = records.size();
+        // The counts are only known once all the issues were handled
+        records.writeInt(0);
+        records.writeInt(0);
+        while (records.size() % 4 != 0) {
+          records.writeByte(0);
+        }
+        threw = false;
+      } finally {
+        if (threw) {
+          close();
+        }
+      }
+    }
+
+    private static DataOutputStream open(File file) throws IOException {
+      return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+    }
+
+    @Override
+    public void handle(FxCopIssue issue) {
+      if (failure != null) {
+        return;
+      }
+
+      try {
+        records.writeInt(issue.reportLine());
+        records.writeInt(sharedIndex(issue.ruleConfigKey()));
+        records.writeInt(sharedIndex(issue.path()));
+        records.writeInt(sharedIndex(issue.file()));
+        records.writeInt(index(issue.message()));
+        records.writeInt(issue.lineOrNoLine());
+        size++;
+      } catch (IOException e) {
+        failure = e;
+      }
+    }
+
+    private int sharedIndex(@Nullable String value) throws IOException {
+      if (value == null) {
+        return NONE;
+      }
+
+      Integer index = sharedIndexes.get(value);
+      if (index == null) {
+        index = index(value);
+        sharedIndexes.put(value, index);
+      }
+      return index;
+    }
+
+    private int index(String value) throws IOException {
+      offsets.writeInt(strings.size());
+      strings.write(value.getBytes(Charsets.UTF_8));
+      return stringCount++;
+    }
+
+    public int size() {
+      return size;
+    }
+
+    /**
+     * Appends the string dictionary, fills in the counts of the header, and renames the complete file to its final name.
+     */
+    public void commit() throws IOException {
+      if (failure != null) {
+        throw failure;
+      }
+
+      offsets.writeInt(strings.size());
+      offsets.close();
+      strings.close();
+      Files.copy(offsetsFile, records);
+      Files.copy(stringsFile, records);
+      records.close();
+
+      RandomAccessFile raf = new RandomAccessFile(temporaryFile, "rw");
+      boolean threw = true;
+      try {
+        raf.seek(countsPosition);
+        raf.writeInt(stringCount);
+        raf.writeInt(size);
+        threw = false;
+      } finally {
+        Closeables.close(raf, threw);
+      }
+
+      if (!temporaryFile.renameTo(file) && !(file.delete() && temporaryFile.renameTo(file))) {
+        throw new IOException("Unable to rename " + temporaryFile.getAbsolutePath() + " to " + file.getAbsolutePath());
+      }
+      committed = true;
+    }
+
+    /**
+     * Deletes the temporary files, including the incomplete issue file when it was not committed.
+     */
+    @Override
+    public void close() {
+      Closeables.closeQuietly(records);
+      Closeables.closeQuietly(offsets);
+      Closeables.closeQuietly(strings);
+      if (!committed) {
+        temporaryFile.delete();
+      }
+      offsetsFile.delete();
+      stringsFile.delete();
+    }
+
+  }
+
+  /**
+   * Memory-mapped view of an issue file: issues are read in place, and only the strings shared among issues are kept once decoded.
+   */
+  public static class Reader {
+
+    private final File file;
+    private final ByteBuffer buffer;
+    private final String key;
+    private final int stringCount;
+    private final int size;
+    private final int offsetsPosition;
+    private final int stringsPosition;
+    private final int recordsPosition;
+    private final String[] sharedStrings;
+
+    public Reader(File file) {
+      this.file = file;
+      this.buffer = map(file);
+
+      try {
+        check(buffer.getInt() == MAGIC && buffer.getInt() == VERSION, "Unsupported format");
+        int keyLength = buffer.getInt();
+        check(keyLength >= 0 && keyLength <= buffer.remaining(), "Invalid key length");
+        byte[] keyBytes = new byte[keyLength];
+        buffer.get(keyBytes);
+        this.key = new String(keyBytes, Charsets.UTF_8);
+        this.stringCount = buffer.getInt();
+        this.size = buffer.getInt();
+        check(stringCount >= 0 && size >= 0, "Negative count");
+
+        this.recordsPosition = (buffer.position() + 3) & ~3;
+        long offsetsEnd = recordsPosition + 4L * RECORD_INTS * size + 4L * (stringCount + 1);
+        check(offsetsEnd <= buffer.limit(), "Unexpected size");
+        this.offsetsPosition = (int) (offsetsEnd - 4L * (stringCount + 1));
+        this.stringsPosition = (int) offsetsEnd;
+        check((long) stringsPosition + buffer.getInt(offsetsPosition + 4 * stringCount) == buffer.limit(), "Unexpected size");
+      } catch (RuntimeException e) {
+        throw new IllegalStateException("Invalid FxCop issue file: " + file.getAbsolutePath(), e);
+      }
+
+      this.sharedStrings = new String[stringCount];
+    }
+
+    private static ByteBuffer map(File file) {
+      RandomAccessFile raf = null;
+      try {
+        raf = new RandomAccessFile(file, "r");
+        check(raf.length() <= Integer.MAX_VALUE, "Too large");
+        return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+      } catch (IOException e) {
+        throw new IllegalStateException("Unable to read the FxCop issue file: " + file.getAbsolutePath(), e);
+      } finally {
+        // The mapping remains valid once the file is closed
+        Closeables.closeQuietly(raf);
+      }
+    }
+
+    private static void check(boolean condition, String message) {
+      Preconditions.checkState(condition, message);
+    }
+
+    public String key() {
+      return key;
+    }
+
+    public int size() {
+      return size;
+    }
+
+    public Cursor cursor() {
+      return new Cursor();
+    }
+
+    /**
+     * Hands the issues to the handler in file order, each one being created only when handled.
+     */
+    public void replay(FxCopIssueHandler handler) {
+      Cursor cursor = cursor();
+      while (cursor.next()) {
+        handler.handle(cursor.issue());
+      }
+    }
+
+    private String string(int index, boolean shared) {
+      if (index == NONE) {
+        return null;
+      }
+      if (index < 0 || index >= stringCount) {
+        throw new IllegalStateException("Invalid string index " + index + " in the FxCop issue file: " + file.getAbsolutePath());
+      }
+      if (shared && sharedStrings[index] != null) {
+        return sharedStrings[index];
+      }
+
+      int start = buffer.getInt(offsetsPosition + 4 * index);
+      int end = buffer.getInt(offsetsPosition + 4 * (index + 1));
+      byte[] bytes = new byte[end - start];
+      ByteBuffer view = buffer.duplicate();
+      view.position(stringsPosition + start);
+      view.get(bytes);
+      String result = new String(bytes, Charsets.UTF_8);
+
+      if (shared) {
+        sharedStrings[index] = result;
+      }
+      return result;
+    }
+
+    /**
+     * Iterates over the records of the file, decoding the fields of the current one on demand.
+     */
+    public class Cursor {
+
+      private int index = -1;
+      private int position;
+
+      public boolean next() {
+        if (index + 1 >= size) {
+          return false;
+        }
+        index++;
+        position = recordsPosition + 4 * RECORD_INTS * index;
+        return true;
+      }
+
+      public int reportLine() {
+        return buffer.getInt(position);
+      }
+
+      public String ruleConfigKey() {
+        return string(buffer.getInt(position + 4), true);
+      }
+
+      @Nullable
+      public String path() {
+        return string(buffer.getInt(position + 8), true);
+      }
+
+      @Nullable
+      public String file() {
+        return string(buffer.getInt(position + 12), true);
+      }
+
+      public String message() {
+        return string(buffer.getInt(position + 16), false);
+      }
+
+      /**
+       * The line, or {@link FxCopIssue#NO_LINE}.
+       */
+      public int line() {
+        return buffer.getInt(position + 20);
+      }
+
+      public FxCopIssue issue() {
+        return new FxCopIssue(reportLine(), ruleConfigKey(), path(), file(), line(), message());
+      }
+
+    }
+
+  }
+
+}
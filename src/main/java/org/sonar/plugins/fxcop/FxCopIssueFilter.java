@@ -0,0 +1,90 @@
+/*
+ * SonarQube FxCop Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.fxcop;
+
+import com.google.common.collect.ImmutableSet;
+
+import javax.annotation.Nullable;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Evaluated by the parser while it reads the report: the &lt;Message&gt; elements of other rules, and the &lt;Issue&gt; elements
+ * of a lower certainty, are skipped without creating any issue. The rejections are counted, also when reports are parsed concurrently.
+ */
+public class FxCopIssueFilter {
+
+  private static final FxCopIssueFilter ALL = new FxCopIssueFilter(null, 0);
+
+  private final Set<String> ruleConfigKeys;
+  private final int minimumCertainty;
+  private final AtomicInteger rejectedMessages = new AtomicInteger();
+  private final AtomicInteger rejectedIssues = new AtomicInteger();
+
+  /**
+   * @param ruleConfigKeys CheckIds of the issues to keep, or null to keep the issues of all rules
+   * @param minimumCertainty issues whose "Certainty" attribute is lower are skipped
+   */
+  public FxCopIssueFilter(@Nullable Collection<String> ruleConfigKeys, int minimumCertainty) {
+    this.ruleConfigKeys = ruleConfigKeys == null ? null : ImmutableSet.copyOf(ruleConfigKeys);
+    this.minimumCertainty = minimumCertainty;
+  }
+
+  public static FxCopIssueFilter all() {
+    return ALL;
+  }
+
+  public boolean acceptsRuleConfigKey(String ruleConfigKey) {
+    if (ruleConfigKeys == null || ruleConfigKeys.contains(ruleConfigKey)) {
+      return true;
+    }
+    rejectedMessages.incrementAndGet();
+    return false;
+  }
+
+  public boolean acceptsCertainty(int certainty) {
+    if (certainty >= minimumCertainty) {
+      return true;
+    }
+    rejectedIssues.incrementAndGet();
+    return false;
+  }
+
+  /**
+   * Number of &lt;Message&gt; elements skipped because of their CheckId, their issues were not read.
+   */
+  public int rejectedMessages() {
+    return rejectedMessages.get();
+  }
+
+  /**
+   * Number of &lt;Issue&gt; elements skipped because of their certainty.
+   */
+  public int rejectedIssues() {
+    return rejectedIssues.get();
+  }
+
+  public boolean filtersCertainty() {
+    return minimumCertainty > 0;
+  }
+
+}
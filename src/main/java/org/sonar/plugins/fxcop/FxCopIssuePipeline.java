@@ -0,0 +1,165 @@
+/*
+ * SonarQube FxCop Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.fxcop;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Produces the issues on a dedicated thread, typically by parsing reports, while the calling thread consumes them.
+ * At most "capacity" batches of issues are queued in between: the producer waits when the consumer lags behind.
+ * A failure of either side stops the other one, and the producer thread is terminated when {@link #run} returns.
+ */
+public class FxCopIssuePipeline {
+
+  private static final int BATCH_SIZE = 256;
+  private static final int CAPACITY = 16;
+  private static final long SHUTDOWN_TIMEOUT_SECONDS = 60;
+  private static final List<FxCopIssue> END = ImmutableList.of();
+
+  private final int batchSize;
+  private final int capacity;
+
+  public FxCopIssuePipeline() {
+    this(BATCH_SIZE, CAPACITY);
+  }
+
+  @VisibleForTesting
+  FxCopIssuePipeline(int batchSize, int capacity) {
+    this.batchSize = batchSize;
+    this.capacity = capacity;
+  }
+
+  public interface Producer {
+
+    void produce(FxCopIssueHandler handler);
+
+  }
+
+  public void run(final Producer producer, FxCopIssueHandler consumer) {
+    final BlockingQueue<List<FxCopIssue>> queue = new ArrayBlockingQueue<List<FxCopIssue>>(capacity);
+
+    ExecutorService executorService = Executors.newSingleThreadExecutor();
+    try {
+      Future<Void> future = executorService.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws InterruptedException {
+          produce(producer, queue);
+          return null;
+        }
+      });
+
+      List<FxCopIssue> batch = queue.take();
+      while (batch != END) {
+        for (FxCopIssue issue : batch) {
+          consumer.handle(issue);
+        }
+        batch = queue.take();
+      }
+
+      future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      shutdown(executorService);
+    }
+  }
+
+  private void produce(Producer producer, BlockingQueue<List<FxCopIssue>> queue) throws InterruptedException {
+    BatchingHandler handler = new BatchingHandler(queue);
+    try {
+      producer.produce(handler);
+      handler.flush();
+    } catch (CancellationException e) {
+      // The consumer failed and no longer reads the queue
+      return;
+    } finally {
+      if (!Thread.currentThread().isInterrupted()) {
+        queue.put(END);
+      }
+    }
+  }
+
+  /**
+   * Interrupts the producer if it is still running, which happens when the consumer failed, and waits for it to end.
+   */
+  private static void shutdown(ExecutorService executorService) {
+    executorService.shutdownNow();
+    try {
+      executorService.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private class BatchingHandler implements FxCopIssueHandler {
+
+    private final BlockingQueue<List<FxCopIssue>> queue;
+    private List<FxCopIssue> batch = Lists.newArrayListWithCapacity(batchSize);
+
+    public BatchingHandler(BlockingQueue<List<FxCopIssue>> queue) {
+      this.queue = queue;
+    }
+
+    @Override
+    public void handle(FxCopIssue issue) {
+      if (Thread.currentThread().isInterrupted()) {
+        throw new CancellationException("The consumer of the FxCop issues stopped.");
+      }
+
+      batch.add(issue);
+      if (batch.size() == batchSize) {
+        flush();
+      }
+    }
+
+    public void flush() {
+      if (batch.isEmpty()) {
+        return;
+      }
+
+      try {
+        queue.put(batch);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new CancellationException("The consumer of the FxCop issues stopped.");
+      }
+      batch = Lists.newArrayListWithCapacity(batchSize);
+    }
+
+  }
+
+}
@@ -0,0 +1,378 @@
+/*
+ * SonarQube FxCop Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.fxcop;
+
+import com.google.common.base.Throwables;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Minimal pull tokenizer of JSON documents: values are read one token at a time, and the ones which are not needed are skipped
+ * without being retained, so that the memory used does not depend on the size of the document.
+ */
+class FxCopJsonReader {
+
+  enum Token {
+    BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+  }
+
+  private static final int EMPTY_DOCUMENT = 0;
+  private static final int NONEMPTY_DOCUMENT = 1;
+  private static final int EMPTY_ARRAY = 2;
+  private static final int NONEMPTY_ARRAY = 3;
+  private static final int EMPTY_OBJECT = 4;
+  private static final int DANGLING_NAME = 5;
+  private static final int NONEMPTY_OBJECT = 6;
+
+  private final Reader reader;
+  private final String source;
+  private final char[] buffer = new char[64 * 1024];
+  private int position;
+  private int limit;
+  private int line = 1;
+
+  private int[] stack = new int[32];
+  private int stackSize;
+
+  private Token peeked;
+  private String peekedValue;
+  private final StringBuilder builder = new StringBuilder();
+
+  /**
+   * The source, usually the path of the read file, is only used in the error messages.
+   */
+  public FxCopJsonReader(Reader reader, String source) {
+    this.reader = reader;
+    this.source = source;
+    push(EMPTY_DOCUMENT);
+  }
+
+  /**
+   * Line of the next token once peeked, or of the last consumed one.
+   */
+  public int line() {
+    return line;
+  }
+
+  public Token peek() {
+    if (peeked != null) {
+      return peeked;
+    }
+
+    int top = stack[stackSize - 1];
+    if (top == EMPTY_ARRAY) {
+      stack[stackSize - 1] = NONEMPTY_ARRAY;
+      if (nextNonWhitespace() == ']') {
+        return peeked(Token.END_ARRAY, null);
+      }
+      position--;
+    } else if (top == NONEMPTY_ARRAY) {
+      char c = nextNonWhitespace();
+      if (c == ']') {
+        return peeked(Token.END_ARRAY, null);
+      } else if (c != ',') {
+        throw error("Expected ',' or ']'");
+      }
+    } else if (top == EMPTY_OBJECT || top == NONEMPTY_OBJECT) {
+      stack[stackSize - 1] = DANGLING_NAME;
+      char c = nextNonWhitespace();
+      if (c == '}') {
+        return peeked(Token.END_OBJECT, null);
+      } else if (top == NONEMPTY_OBJECT) {
+        if (c != ',') {
+          throw error("Expected ',' or '}'");
+        }
+        c = nextNonWhitespace();
+      }
+      if (c != '"') {
+        throw error("Expected a name");
+      }
+      return peeked(Token.NAME, readString());
+    } else if (top == DANGLING_NAME) {
+      stack[stackSize - 1] = NONEMPTY_OBJECT;
+      if (nextNonWhitespace() != ':') {
+        throw error("Expected ':'");
+      }
+    } else if (top == EMPTY_DOCUMENT) {
+      stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+    } else {
+      if (skipWhitespace()) {
+        throw error("Expected the end of the document");
+      }
+      return peeked(Token.END_DOCUMENT, null);
+    }
+
+    return peekValue();
+  }
+
+  private Token peekValue() {
+    char c = nextNonWhitespace();
+    if (c == '{') {
+      return peeked(Token.BEGIN_OBJECT, null);
+    } else if (c == '[') {
+      return peeked(Token.BEGIN_ARRAY, null);
+    } else if (c == '"') {
+      return peeked(Token.STRING, readString());
+    } else if (c == '-' || (c >= '0' && c <= '9')) {
+      position--;
+      return peeked(Token.NUMBER, readLiteral());
+    } else if (c >= 'a' && c <= 'z') {
+      position--;
+      String literal = readLiteral();
+      if ("true".equals(literal) || "false".equals(literal)) {
+        return peeked(Token.BOOLEAN, literal);
+      } else if ("null".equals(literal)) {
+        return peeked(Token.NULL, null);
+      }
+      throw error("Unexpected literal \"" + literal + "\"");
+    }
+    throw error("Unexpected character '" + c + "'");
+  }
+
+  private Token peeked(Token token, String value) {
+    peeked = token;
+    peekedValue = value;
+    return token;
+  }
+
+  public boolean hasNext() {
+    Token token = peek();
+    return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+  }
+
+  public void beginObject() {
+    expect(Token.BEGIN_OBJECT);
+    push(EMPTY_OBJECT);
+  }
+
+  public void endObject() {
+    expect(Token.END_OBJECT);
+    stackSize--;
+  }
+
+  public void beginArray() {
+    expect(Token.BEGIN_ARRAY);
+    push(EMPTY_ARRAY);
+  }
+
+  public void endArray() {
+    expect(Token.END_ARRAY);
+    stackSize--;
+  }
+
+  public String nextName() {
+    expect(Token.NAME);
+    return peekedValue;
+  }
+
+  /**
+   * The value of the next string, or the text of the next number or boolean.
+   */
+  public String nextString() {
+    Token token = peek();
+    if (token != Token.STRING && token != Token.NUMBER && token != Token.BOOLEAN) {
+      throw error("Expected a string but was " + token);
+    }
+    peeked = null;
+    return peekedValue;
+  }
+
+  public int nextInt() {
+    Token token = peek();
+    if (token != Token.NUMBER && token != Token.STRING) {
+      throw error("Expected a number but was " + token);
+    }
+    try {
+      int value = Integer.parseInt(peekedValue);
+      peeked = null;
+      return value;
+    } catch (NumberFormatException e) {
+      throw error("Expected an integer but was \"" + peekedValue + "\"");
+    }
+  }
+
+  /**
+   * Skips the next value, including all the nested ones of an object or array.
+   */
+  public void skipValue() {
+    int depth = 0;
+    do {
+      Token token = peek();
+      if (token == Token.BEGIN_OBJECT) {
+        beginObject();
+        depth++;
+      } else if (token == Token.BEGIN_ARRAY) {
+        beginArray();
+        depth++;
+      } else if (token == Token.END_OBJECT) {
+        endObject();
+        depth--;
+      } else if (token == Token.END_ARRAY) {
+        endArray();
+        depth--;
+      } else if (token == Token.END_DOCUMENT) {
+        throw error("Unexpected end of the document");
+      } else {
+        peeked = null;
+      }
+    } while (depth > 0);
+  }
+
+  public IllegalStateException error(String message) {
+    return error(message, line);
+  }
+
+  public IllegalStateException error(String message, int line) {
+    return new IllegalStateException(message + " in " + source + " at line " + line);
+  }
+
+  private void expect(Token expected) {
+    Token token = peek();
+    if (token != expected) {
+      throw error("Expected " + expected + " but was " + token);
+    }
+    peeked = null;
+  }
+
+  private void push(int context) {
+    if (stackSize == stack.length) {
+      stack = Arrays.copyOf(stack, stackSize * 2);
+    }
+    stack[stackSize++] = context;
+  }
+
+  private char nextNonWhitespace() {
+    if (!skipWhitespace()) {
+      throw error("Unexpected end of the document");
+    }
+    return buffer[position++];
+  }
+
+  /**
+   * Returns whether there is a non-whitespace character left, which is then at the current position.
+   */
+  private boolean skipWhitespace() {
+    while (position < limit || fill()) {
+      char c = buffer[position];
+      if (c == '\n') {
+        line++;
+      } else if (c != ' ' && c != '\t' && c != '\r') {
+        return true;
+      }
+      position++;
+    }
+    return false;
+  }
+
+  private String readString() {
+    builder.setLength(0);
+    while (true) {
+      int start = position;
+      while (position < limit) {
+        char c = buffer[position++];
+        if (c == '"') {
+          builder.append(buffer, start, position - 1 - start);
+          return builder.toString();
+        } else if (c == '\\') {
+          builder.append(buffer, start, position - 1 - start);
+          builder.append(readEscape());
+          start = position;
+        } else if (c == '\n') {
+          line++;
+        }
+      }
+      builder.append(buffer, start, position - start);
+      if (!fill()) {
+        throw error("Unterminated string");
+      }
+    }
+  }
+
+  private char readEscape() {
+    char c = nextChar();
+    switch (c) {
+      case 'b':
+        return '\b';
+      case 'f':
+        return '\f';
+      case 'n':
+        return '\n';
+      case 'r':
+        return '\r';
+      case 't':
+        return '\t';
+      case 'u':
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+          int digit = Character.digit(nextChar(), 16);
+          if (digit == -1) {
+            throw error("Invalid unicode escape sequence");
+          }
+          value = (value << 4) | digit;
+        }
+        return (char) value;
+      case '"':
+      case '\\':
+      case '/':
+        return c;
+      default:
+        throw error("Invalid escape sequence '\\" + c + "'");
+    }
+  }
+
+  private char nextChar() {
+    if (position == limit && !fill()) {
+      throw error("Unexpected end of the document");
+    }
+    return buffer[position++];
+  }
+
+  private String readLiteral() {
+    builder.setLength(0);
+    while (position < limit || fill()) {
+      char c = buffer[position];
+      if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'E') {
+        builder.append(c);
+        position++;
+      } else {
+        break;
+      }
+    }
+    return builder.toString();
+  }
+
+  private boolean fill() {
+    try {
+      int read = reader.read(buffer, 0, buffer.length);
+      if (read <= 0) {
+        position = limit = 0;
+        return false;
+      }
+      position = 0;
+      limit = read;
+      return true;
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+}
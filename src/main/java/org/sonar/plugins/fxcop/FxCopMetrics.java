@@ -0,0 +1,97 @@
+/*
+ * SonarQube FxCop Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.fxcop;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durations of the stages of an FxCop analysis and counters of its issues, kept in insertion order.
+ * Names are expected to be plain identifiers, they are not escaped in the JSON output.
+ */
+public class FxCopMetrics {
+
+  private final Map<String, Long> timings = Maps.newLinkedHashMap();
+  private final Map<String, Long> counters = Maps.newLinkedHashMap();
+
+  public void addTime(String stage, long nanos) {
+    Long previous = timings.get(stage);
+    timings.put(stage, (previous == null ? 0 : previous) + TimeUnit.NANOSECONDS.toMillis(nanos));
+  }
+
+  public long time(String stage) {
+    Long value = timings.get(stage);
+    return value == null ? 0 : value;
+  }
+
+  public void count(String counter, long value) {
+    counters.put(counter, value);
+  }
+
+  public long count(String counter) {
+    Long value = counters.get(counter);
+    return value == null ? 0 : value;
+  }
+
+  public String toJson() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("{\n  \"timingsMs\": ");
+    appendJson(sb, timings);
+    sb.append(",\n  \"counters\": ");
+    appendJson(sb, counters);
+    sb.append("\n}\n");
+    return sb.toString();
+  }
+
+  private static void appendJson(StringBuilder sb, Map<String, Long> values) {
+    sb.append('{');
+    boolean first = true;
+    for (Map.Entry<String, Long> entry : values.entrySet()) {
+      if (!first) {
+        sb.append(", ");
+      }
+      sb.append('"').append(entry.getKey()).append("\": ").append(entry.getValue());
+      first = false;
+    }
+    sb.append('}');
+  }
+
+  public String summary() {
+    StringBuilder sb = new StringBuilder("FxCop analysis:");
+    for (Map.Entry<String, Long> entry : timings.entrySet()) {
+      sb.append(' ').append(entry.getKey()).append('=').append(entry.getValue()).append("ms");
+    }
+    for (Map.Entry<String, Long> entry : counters.entrySet()) {
+      sb.append(' ').append(entry.getKey()).append('=').append(entry.getValue());
+    }
+    return sb.toString();
+  }
+
+  public void write(File file) throws IOException {
+    Files.write(toJson(), file, Charsets.UTF_8);
+  }
+
+}
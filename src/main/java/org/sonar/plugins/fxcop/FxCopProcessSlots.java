@@ -0,0 +1,225 @@
+/*
+ * SonarQube FxCop Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.fxcop;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Sets;
+import com.google.common.io.Closeables;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.Date;
+import java.util.Set;
+
+/**
+ * Host-wide semaphore limiting the number of concurrent FxCopCmd.exe processes, shared by all the JVMs using the same directory.
+ * Each permit is an OS lock on one of the "slot" files of the directory: it is released by the OS when its owning process dies.
+ * The owner of a slot is written into its file while it is held, and cleared on release. A slot found free with an owner
+ * was therefore left behind by a crashed process, and a slot held for longer than the expected duration is reported as possibly hung.
+ */
+public class FxCopProcessSlots {
+
+  private static final Logger LOG = LoggerFactory.getLogger(FxCopProcessSlots.class);
+  private static final long DEFAULT_POLL_INTERVAL_MILLIS = 200;
+  // The lock is taken past the owner record, which remains readable from other processes on Windows, where locks are mandatory
+  private static final long LOCK_POSITION = Long.MAX_VALUE - 1;
+  // Closing any descriptor of a file drops the POSIX locks of the whole process on it: slots held by this JVM must not even be opened
+  private static final Set<File> HELD_IN_THIS_JVM = Sets.newHashSet();
+
+  private final File directory;
+  private final int slots;
+  private final long pollIntervalMillis;
+  private final Set<String> reportedHungOwners = Sets.newHashSet();
+
+  public FxCopProcessSlots(File directory, int slots) {
+    this(directory, slots, DEFAULT_POLL_INTERVAL_MILLIS);
+  }
+
+  @VisibleForTesting
+  FxCopProcessSlots(File directory, int slots, long pollIntervalMillis) {
+    Preconditions.checkArgument(slots > 0, "The number of FxCopCmd.exe slots must be greater than 0.");
+    this.directory = directory;
+    this.slots = slots;
+    this.pollIntervalMillis = pollIntervalMillis;
+  }
+
+  /**
+   * Blocks until a slot is free, and takes it. Slots held for longer than "expectedMillis" are reported as possibly hung while waiting.
+   */
+  public Slot acquire(long expectedMillis) {
+    if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+      throw new IllegalStateException("Unable to create the FxCopCmd.exe slots directory: " + directory.getAbsolutePath());
+    }
+
+    long start = System.nanoTime();
+    boolean waiting = false;
+    while (true) {
+      for (int i = 0; i < slots; i++) {
+        Slot slot = tryAcquire(new File(directory, "fxcop-slot-" + i + ".lock"), expectedMillis);
+        if (slot != null) {
+          if (waiting) {
+            LOG.info("Waited " + ((System.nanoTime() - start) / 1000000) + " ms for a free FxCopCmd.exe slot in: " + directory.getAbsolutePath());
+          }
+          return slot;
+        }
+      }
+
+      if (!waiting) {
+        LOG.info("All the " + slots + " FxCopCmd.exe slots of " + directory.getAbsolutePath() + " are busy, waiting for one to be released.");
+        waiting = true;
+      }
+      sleep();
+    }
+  }
+
+  private Slot tryAcquire(File file, long expectedMillis) {
+    File key = file.getAbsoluteFile();
+    synchronized (HELD_IN_THIS_JVM) {
+      if (!HELD_IN_THIS_JVM.add(key)) {
+        return null;
+      }
+    }
+
+    RandomAccessFile raf = null;
+    boolean acquired = false;
+    try {
+      raf = new RandomAccessFile(file, "rw");
+      FileLock lock;
+      try {
+        lock = raf.getChannel().tryLock(LOCK_POSITION, 1, false);
+      } catch (OverlappingFileLockException e) {
+        lock = null;
+      }
+
+      if (lock == null) {
+        checkHung(file, readOwner(raf), expectedMillis);
+        return null;
+      }
+
+      String previousOwner = readOwner(raf);
+      if (!previousOwner.isEmpty()) {
+        LOG.warn("Recovering the stale FxCopCmd.exe slot " + file.getAbsolutePath() + ", which was not released by: " + previousOwner);
+      }
+      writeOwner(raf, owner());
+
+      acquired = true;
+      return new Slot(key, raf, lock);
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to lock the FxCopCmd.exe slot: " + file.getAbsolutePath(), e);
+    } finally {
+      if (!acquired) {
+        Closeables.closeQuietly(raf);
+        release(key);
+      }
+    }
+  }
+
+  private static void release(File key) {
+    synchronized (HELD_IN_THIS_JVM) {
+      HELD_IN_THIS_JVM.remove(key);
+    }
+  }
+
+  private synchronized void checkHung(File file, String owner, long expectedMillis) {
+    int separator = owner.lastIndexOf(' ');
+    if (separator == -1 || reportedHungOwners.contains(owner)) {
+      return;
+    }
+
+    long since;
+    try {
+      since = Long.parseLong(owner.substring(separator + 1));
+    } catch (NumberFormatException e) {
+      return;
+    }
+    if (System.currentTimeMillis() - since > expectedMillis) {
+      reportedHungOwners.add(owner);
+      LOG.warn("The FxCopCmd.exe slot " + file.getAbsolutePath() + " is held by " + owner.substring(0, separator) + " since " + new Date(since)
+        + ", which is longer than expected: its process may be hung.");
+    }
+  }
+
+  private static String owner() {
+    return ManagementFactory.getRuntimeMXBean().getName() + "/" + Thread.currentThread().getName() + " " + System.currentTimeMillis();
+  }
+
+  private static String readOwner(RandomAccessFile raf) throws IOException {
+    byte[] bytes = new byte[(int) Math.min(raf.length(), 1024)];
+    raf.seek(0);
+    raf.readFully(bytes);
+    return new String(bytes, Charsets.UTF_8).trim();
+  }
+
+  private static void writeOwner(RandomAccessFile raf, String owner) throws IOException {
+    byte[] bytes = owner.getBytes(Charsets.UTF_8);
+    raf.setLength(0);
+    raf.seek(0);
+    raf.write(bytes);
+  }
+
+  private void sleep() {
+    try {
+      Thread.sleep(pollIntervalMillis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    }
+  }
+
+  /**
+   * A taken slot, to be released once the FxCopCmd.exe process ended.
+   */
+  public static class Slot {
+
+    private final File key;
+    private final RandomAccessFile raf;
+    private final FileLock lock;
+
+    private Slot(File key, RandomAccessFile raf, FileLock lock) {
+      this.key = key;
+      this.raf = raf;
+      this.lock = lock;
+    }
+
+    public void release() {
+      try {
+        writeOwner(raf, "");
+        lock.release();
+      } catch (IOException e) {
+        LOG.warn("Unable to release the FxCopCmd.exe slot cleanly, it will be released when the process ends.", e);
+      } finally {
+        Closeables.closeQuietly(raf);
+        FxCopProcessSlots.release(key);
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,209 @@
+/*
+ * SonarQube FxCop Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.fxcop;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+import com.google.common.io.Files;
+import com.google.common.primitives.Longs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Content-addressed cache of FxCop reports, which can be shared by several workspaces, builds and analyses running at once.
+ * Entries are only ever created by renaming a complete temporary file, so readers never see a partial report, and the last modification
+ * time of an entry is refreshed on each hit, so that the least recently used entries are the first to be evicted once the cache is too large.
+ */
+public class FxCopReportCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(FxCopReportCache.class);
+  private static final String ENTRY_SUFFIX = ".xml";
+  private static final String TEMPORARY_SUFFIX = ".tmp";
+  private static final long ABANDONED_TEMPORARY_FILE_MILLIS = TimeUnit.HOURS.toMillis(1);
+  private static final Random RANDOM = new Random();
+  private static final Ordering<CachedEntry> LEAST_RECENTLY_USED_FIRST = new Ordering<CachedEntry>() {
+    @Override
+    public int compare(CachedEntry left, CachedEntry right) {
+      return Longs.compare(left.lastModified, right.lastModified);
+    }
+  };
+
+  private final File directory;
+  private final long maxBytes;
+
+  public FxCopReportCache(File directory, long maxBytes) {
+    Preconditions.checkArgument(maxBytes > 0, "The maximum size of the FxCop report cache must be greater than 0.");
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Copies the cached report of the given key to the report file, and returns whether there was one.
+   */
+  public boolean get(String key, File reportFile) {
+    File entry = entry(key);
+    if (!entry.isFile()) {
+      return false;
+    }
+
+    // The entry may be evicted meanwhile by another analysis, which is then a miss
+    File temporaryFile = temporaryFile(reportFile.getAbsoluteFile().getParentFile(), reportFile.getName());
+    try {
+      Files.copy(entry, temporaryFile);
+      replace(temporaryFile, reportFile);
+    } catch (IOException e) {
+      LOG.debug("Unable to read the cached FxCop report " + entry.getAbsolutePath() + ", considering it as missing.", e);
+      deleteQuietly(temporaryFile);
+      return false;
+    }
+
+    if (!entry.setLastModified(System.currentTimeMillis())) {
+      LOG.debug("Unable to update the last modification time of the cached FxCop report: " + entry.getAbsolutePath());
+    }
+    return true;
+  }
+
+  /**
+   * Adds the report to the cache under the given key, and evicts the least recently used entries if the cache became too large.
+   * When several analyses add the same key at once, any of their reports, which are equivalent, is kept.
+   */
+  public void put(String key, File reportFile) {
+    if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+      LOG.warn("Unable to create the FxCop report cache directory: " + directory.getAbsolutePath());
+      return;
+    }
+
+    File entry = entry(key);
+    File temporaryFile = temporaryFile(directory, entry.getName());
+    try {
+      Files.copy(reportFile, temporaryFile);
+      if (!temporaryFile.renameTo(entry)) {
+        // Windows does not replace existing files: the entry was added meanwhile
+        deleteQuietly(temporaryFile);
+      }
+    } catch (IOException e) {
+      LOG.warn("Unable to add the FxCop report " + reportFile.getAbsolutePath() + " to the cache: " + directory.getAbsolutePath(), e);
+      deleteQuietly(temporaryFile);
+      return;
+    }
+
+    try {
+      evict();
+    } catch (RuntimeException e) {
+      LOG.warn("Unable to evict the least recently used FxCop reports from the cache: " + directory.getAbsolutePath(), e);
+    }
+  }
+
+  @VisibleForTesting
+  void evict() {
+    File[] files = directory.listFiles(new FileFilter() {
+      @Override
+      public boolean accept(File file) {
+        return file.isFile();
+      }
+    });
+    if (files == null) {
+      return;
+    }
+
+    // Other analyses touch and evict entries meanwhile, so their times and sizes are read once before sorting
+    long now = System.currentTimeMillis();
+    long totalBytes = 0;
+    List<CachedEntry> entries = Lists.newArrayList();
+    for (File file : files) {
+      long lastModified = file.lastModified();
+      if (lastModified == 0) {
+        // Deleted meanwhile
+        continue;
+      }
+      if (file.getName().endsWith(ENTRY_SUFFIX)) {
+        CachedEntry entry = new CachedEntry(file, lastModified, file.length());
+        entries.add(entry);
+        totalBytes += entry.length;
+      } else if (file.getName().endsWith(TEMPORARY_SUFFIX) && now - lastModified > ABANDONED_TEMPORARY_FILE_MILLIS) {
+        deleteQuietly(file);
+      }
+    }
+
+    if (totalBytes <= maxBytes) {
+      return;
+    }
+    for (CachedEntry entry : LEAST_RECENTLY_USED_FIRST.sortedCopy(entries)) {
+      if (totalBytes <= maxBytes) {
+        break;
+      }
+      if (entry.file.delete()) {
+        LOG.debug("Evicted the cached FxCop report: " + entry.file.getAbsolutePath());
+        totalBytes -= entry.length;
+      } else if (!entry.file.exists()) {
+        // Evicted meanwhile by another analysis
+        totalBytes -= entry.length;
+      }
+    }
+  }
+
+  private File entry(String key) {
+    return new File(directory, key + ENTRY_SUFFIX);
+  }
+
+  private static File temporaryFile(File directory, String name) {
+    long suffix;
+    synchronized (RANDOM) {
+      suffix = RANDOM.nextLong() & Long.MAX_VALUE;
+    }
+    return new File(directory, name + "." + suffix + TEMPORARY_SUFFIX);
+  }
+
+  private static void replace(File from, File to) throws IOException {
+    if (!from.renameTo(to) && !(to.delete() && from.renameTo(to))) {
+      throw new IOException("Unable to rename " + from.getAbsolutePath() + " to " + to.getAbsolutePath());
+    }
+  }
+
+  private static void deleteQuietly(File file) {
+    if (file.exists() && !file.delete()) {
+      LOG.warn("Unable to delete the file: " + file.getAbsolutePath());
+    }
+  }
+
+  private static class CachedEntry {
+
+    private final File file;
+    private final long lastModified;
+    private final long length;
+
+    CachedEntry(File file, long lastModified, long length) {
+      this.file = file;
+      this.lastModified = lastModified;
+      this.length = length;
+    }
+
+  }
+
+}
@@ -19,9 +19,13 @@
  */
 package org.sonar.plugins.fxcop;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
+import com.google.common.base.Function;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.io.Closeables;
 
 import javax.annotation.Nullable;
@@ -30,56 +34,375 @@ import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class FxCopReportParser {
 
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int PROLOG_SIZE = 1024;
+  private static final long SPLIT_THRESHOLD = 4 * 1024 * 1024;
+  private static final Pattern ENCODING_PATTERN = Pattern.compile("^<\\?xml[^>]*\\sencoding\\s*=\\s*[\"']([A-Za-z0-9._:-]+)[\"']");
+
+  private final XMLInputFactory xmlFactory;
+  private final long splitThreshold;
+
+  public FxCopReportParser() {
+    this(SPLIT_THRESHOLD);
+  }
+
+  @VisibleForTesting
+  FxCopReportParser(long splitThreshold) {
+    this.splitThreshold = splitThreshold;
+    xmlFactory = XMLInputFactory.newInstance();
+    xmlFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    xmlFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+  }
+
   public List<FxCopIssue> parse(File file) {
-    return new Parser().parse(file);
+    return parse(file, FxCopIssueFilter.all());
+  }
+
+  private List<FxCopIssue> parse(File file, FxCopIssueFilter filter) {
+    final ImmutableList.Builder<FxCopIssue> issuesBuilder = ImmutableList.builder();
+    parse(file, filter, new FxCopIssueHandler() {
+      @Override
+      public void handle(FxCopIssue issue) {
+        issuesBuilder.add(issue);
+      }
+    });
+    return issuesBuilder.build();
+  }
+
+  /**
+   * Streams the issues of the report to the given handler, as they are read, without retaining them.
+   */
+  public void parse(File file, FxCopIssueHandler handler) {
+    parse(file, FxCopIssueFilter.all(), handler);
+  }
+
+  /**
+   * Streams the issues of the report accepted by the filter to the given handler, as they are read, without retaining them.
+   */
+  public void parse(File file, FxCopIssueFilter filter, FxCopIssueHandler handler) {
+    InputStream input = null;
+    try {
+      input = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+      parse(file, input, filter, handler);
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    } finally {
+      Closeables.closeQuietly(input);
+    }
+  }
+
+  /**
+   * Parses a single report on at most "parallelism" threads, by splitting it on its top-level &lt;Target&gt; elements, which contain
+   * the &lt;Message&gt; elements of their issues. The issues are handed to the given handler on the calling thread, in document order,
+   * as soon as the target they belong to is next: only the issues of the targets being parsed are retained.
+   * Small reports, reports with less than two targets and reports in encodings which are not ASCII compatible are parsed sequentially.
+   */
+  public void parse(File file, FxCopIssueHandler handler, int parallelism) {
+    parse(file, FxCopIssueFilter.all(), handler, parallelism);
+  }
+
+  public void parse(File file, FxCopIssueFilter filter, FxCopIssueHandler handler, int parallelism) {
+    if (parallelism <= 1 || file.length() < splitThreshold || file.length() > Integer.MAX_VALUE) {
+      parse(file, filter, handler);
+      return;
+    }
+
+    FileInputStream input = null;
+    try {
+      input = new FileInputStream(file);
+      final Charset charset = detectEncoding(new BufferedInputStream(input, PROLOG_SIZE));
+      if (!isAsciiCompatible(charset)) {
+        parse(file, filter, handler);
+        return;
+      }
+
+      // The mapping is released by the garbage collector, once the buffer is no longer referenced
+      final MappedByteBuffer buffer = input.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+      FxCopReportSegments segments = FxCopReportSegments.scan(buffer);
+      if (segments.targets().size() < 2) {
+        parse(file, filter, handler);
+        return;
+      }
+
+      parseSegments(file, buffer, charset, segments, filter, handler, parallelism);
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    } finally {
+      Closeables.closeQuietly(input);
+    }
+  }
+
+  private void parseSegments(final File file, final ByteBuffer buffer, final Charset charset, FxCopReportSegments segments, final FxCopIssueFilter filter,
+    FxCopIssueHandler handler, int parallelism) {
+    List<FxCopReportSegments.Segment> targets = segments.targets();
+    int threads = Math.min(parallelism, targets.size());
+    ExecutorService executorService = Executors.newFixedThreadPool(threads);
+    try {
+      OrderedTasks results = new OrderedTasks(executorService, Lists.transform(targets, new Function<FxCopReportSegments.Segment, Callable<List<FxCopIssue>>>() {
+        @Override
+        public Callable<List<FxCopIssue>> apply(final FxCopReportSegments.Segment target) {
+          return new Callable<List<FxCopIssue>>() {
+            @Override
+            public List<FxCopIssue> call() {
+              ByteBuffer bytes = buffer.duplicate();
+              bytes.position(target.start());
+              bytes.limit(target.end());
+              try {
+                return parse(file, new InputStreamReader(new ByteBufferInputStream(bytes.slice()), charset), target.lineOffset(), filter);
+              } catch (RuntimeException e) {
+                throw tiedToFile(file, e);
+              }
+            }
+          };
+        }
+      }).iterator(), threads);
+
+      final List<FxCopIssue> restIssues = Lists.newArrayList();
+      parse(file, new ByteArrayInputStream(segments.rest()), filter, new FxCopIssueHandler() {
+        @Override
+        public void handle(FxCopIssue issue) {
+          restIssues.add(issue);
+        }
+      });
+
+      int restIndex = 0;
+      for (FxCopReportSegments.Segment target : targets) {
+        while (restIndex < restIssues.size() && restIssues.get(restIndex).reportLine() <= target.lineOffset()) {
+          handler.handle(restIssues.get(restIndex));
+          restIndex++;
+        }
+        for (FxCopIssue issue : results.next()) {
+          handler.handle(issue);
+        }
+      }
+      for (; restIndex < restIssues.size(); restIndex++) {
+        handler.handle(restIssues.get(restIndex));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  private void parse(File file, InputStream input, FxCopIssueFilter filter, FxCopIssueHandler handler) throws IOException {
+    Reader reader = new InputStreamReader(input, detectEncoding(input));
+    new Parser(filter, handler, 0).parse(file, createXmlStream(reader));
+  }
+
+  private List<FxCopIssue> parse(File file, Reader reader, int lineOffset, FxCopIssueFilter filter) {
+    final ImmutableList.Builder<FxCopIssue> issuesBuilder = ImmutableList.builder();
+    new Parser(filter, new FxCopIssueHandler() {
+      @Override
+      public void handle(FxCopIssue issue) {
+        issuesBuilder.add(issue);
+      }
+    }, lineOffset).parse(file, createXmlStream(reader));
+    return issuesBuilder.build();
+  }
+
+  /**
+   * Parse errors already mention the report, other failures of the worker threads would not.
+   */
+  private static RuntimeException tiedToFile(File file, RuntimeException e) {
+    if (e instanceof ParseErrorException) {
+      return e;
+    }
+    return new IllegalStateException("Unable to parse the FxCop report: " + file.getAbsolutePath(), e);
+  }
+
+  private static boolean isAsciiCompatible(Charset charset) {
+    return Charsets.UTF_8.equals(charset) || Charsets.ISO_8859_1.equals(charset) || Charsets.US_ASCII.equals(charset);
+  }
+
+  /**
+   * Parses the reports on at most "parallelism" threads, and hands their issues to the given handler on the calling thread,
+   * report after report in the given order, each one in document order: the result does not depend on the scheduling.
+   * At most "parallelism" reports are in flight, and the issues of each report are handed over as soon as it is next.
+   */
+  public void parse(List<File> files, FxCopIssueHandler handler, int parallelism) {
+    parse(files, FxCopIssueFilter.all(), handler, parallelism);
+  }
+
+  public void parse(List<File> files, final FxCopIssueFilter filter, FxCopIssueHandler handler, int parallelism) {
+    int threads = Math.max(1, Math.min(parallelism, files.size()));
+    if (threads == 1) {
+      for (File file : files) {
+        parse(file, filter, handler);
+      }
+      return;
+    }
+
+    ExecutorService executorService = Executors.newFixedThreadPool(threads);
+    try {
+      OrderedTasks results = new OrderedTasks(executorService, Lists.transform(files, new Function<File, Callable<List<FxCopIssue>>>() {
+        @Override
+        public Callable<List<FxCopIssue>> apply(final File file) {
+          return new Callable<List<FxCopIssue>>() {
+            @Override
+            public List<FxCopIssue> call() {
+              try {
+                return parse(file, filter);
+              } catch (RuntimeException e) {
+                throw tiedToFile(file, e);
+              }
+            }
+          };
+        }
+      }).iterator(), threads);
+
+      while (results.hasNext()) {
+        for (FxCopIssue issue : results.next()) {
+          handler.handle(issue);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  /**
+   * Detects the encoding of the report from its byte order mark or XML declaration, as described in appendix F of the XML specification,
+   * and skips the byte order mark. Decoding through a reader is noticeably faster than letting the StAX implementation decode the bytes.
+   */
+  static Charset detectEncoding(InputStream input) throws IOException {
+    input.mark(PROLOG_SIZE);
+    byte[] prolog = new byte[PROLOG_SIZE];
+    int length = 0;
+    int read;
+    while (length < prolog.length && (read = input.read(prolog, length, prolog.length - length)) != -1) {
+      length += read;
+    }
+    input.reset();
+
+    int b0 = length > 0 ? prolog[0] & 0xFF : -1;
+    int b1 = length > 1 ? prolog[1] & 0xFF : -1;
+    int b2 = length > 2 ? prolog[2] & 0xFF : -1;
+    int b3 = length > 3 ? prolog[3] & 0xFF : -1;
+
+    if (b0 == 0xEF && b1 == 0xBB && b2 == 0xBF) {
+      skipFully(input, 3);
+      return Charsets.UTF_8;
+    } else if (b0 == 0xFE && b1 == 0xFF) {
+      skipFully(input, 2);
+      return Charsets.UTF_16BE;
+    } else if (b0 == 0xFF && b1 == 0xFE) {
+      skipFully(input, 2);
+      return Charsets.UTF_16LE;
+    } else if (b0 == 0x00 && b1 == 0x3C && b2 == 0x00 && b3 == 0x3F) {
+      return Charsets.UTF_16BE;
+    } else if (b0 == 0x3C && b1 == 0x00 && b2 == 0x3F && b3 == 0x00) {
+      return Charsets.UTF_16LE;
+    }
+
+    Matcher matcher = ENCODING_PATTERN.matcher(new String(prolog, 0, length, Charsets.ISO_8859_1));
+    if (matcher.find()) {
+      String encoding = matcher.group(1);
+      if (!encoding.toUpperCase().startsWith("UTF-16") && Charset.isSupported(encoding)) {
+        return Charset.forName(encoding);
+      }
+    }
+    return Charsets.UTF_8;
+  }
+
+  private static void skipFully(InputStream input, int count) throws IOException {
+    for (int i = 0; i < count; i++) {
+      input.read();
+    }
+  }
+
+  /**
+   * Not all StAX implementations support creating readers concurrently from the same factory.
+   */
+  private XMLStreamReader createXmlStream(Reader reader) {
+    try {
+      synchronized (xmlFactory) {
+        return xmlFactory.createXMLStreamReader(reader);
+      }
+    } catch (XMLStreamException e) {
+      throw Throwables.propagate(e);
+    }
   }
 
   private static class Parser {
 
+    private final FxCopIssueFilter filter;
+    private final FxCopIssueHandler handler;
+    private final int lineOffset;
     private File file;
     private XMLStreamReader stream;
-    private final ImmutableList.Builder<FxCopIssue> filesBuilder = ImmutableList.builder();
     private String ruleConfigKey;
+    private final Map<String, String> dictionary = Maps.newHashMap();
 
-    public List<FxCopIssue> parse(File file) {
-      this.file = file;
+    public Parser(FxCopIssueFilter filter, FxCopIssueHandler handler, int lineOffset) {
+      this.filter = filter;
+      this.handler = handler;
+      this.lineOffset = lineOffset;
+    }
 
-      InputStreamReader reader = null;
-      XMLInputFactory xmlFactory = XMLInputFactory.newInstance();
+    public void parse(File file, XMLStreamReader stream) {
+      this.file = file;
+      this.stream = stream;
 
       try {
-        reader = new InputStreamReader(new FileInputStream(file), Charsets.UTF_8);
-        stream = xmlFactory.createXMLStreamReader(reader);
-
         while (stream.hasNext()) {
-          if (stream.next() == XMLStreamConstants.START_ELEMENT) {
+          int event = stream.next();
+          if (event == XMLStreamConstants.START_ELEMENT) {
             String tagName = stream.getLocalName();
 
             if ("Message".equals(tagName)) {
               handleMessageTag();
             } else if ("Issue".equals(tagName)) {
               handleIssueTag();
+            } else if ("Rules".equals(tagName) || "Localized".equals(tagName)) {
+              skipElement();
             }
+          } else if (event == XMLStreamConstants.END_ELEMENT && "Targets".equals(stream.getLocalName())) {
+            // Only the rule metadata and localized strings follow the targets
+            break;
           }
         }
-      } catch (IOException e) {
-        throw Throwables.propagate(e);
       } catch (XMLStreamException e) {
         throw Throwables.propagate(e);
       } finally {
         closeXmlStream();
-        Closeables.closeQuietly(reader);
       }
-
-      return filesBuilder.build();
     }
 
     private void closeXmlStream() {
@@ -92,16 +415,58 @@ public class FxCopReportParser {
       }
     }
 
-    private void handleMessageTag() {
-      this.ruleConfigKey = getRequiredAttribute("CheckId");
+    /**
+     * Skips the current element and its descendants, which carry no issue.
+     */
+    private void skipElement() throws XMLStreamException {
+      int depth = 1;
+      while (depth > 0) {
+        int event = stream.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          depth++;
+        } else if (event == XMLStreamConstants.END_ELEMENT) {
+          depth--;
+        }
+      }
+    }
+
+    private void handleMessageTag() throws XMLStreamException {
+      String checkId = getRequiredAttribute("CheckId");
+      if (filter.acceptsRuleConfigKey(checkId)) {
+        this.ruleConfigKey = dictionaryValue(checkId);
+      } else {
+        skipElement();
+      }
     }
 
     private void handleIssueTag() throws XMLStreamException {
-      String path = getAttribute("Path");
-      String fileAttribute = getAttribute("File");
-      Integer line = getIntAttribute("Line");
+      int pathIndex = -1;
+      int fileIndex = -1;
+      int lineIndex = -1;
+      int certaintyIndex = -1;
+      for (int i = 0; i < stream.getAttributeCount(); i++) {
+        String name = stream.getAttributeLocalName(i);
+        if ("Path".equals(name)) {
+          pathIndex = i;
+        } else if ("File".equals(name)) {
+          fileIndex = i;
+        } else if ("Line".equals(name)) {
+          lineIndex = i;
+        } else if ("Certainty".equals(name)) {
+          certaintyIndex = i;
+        }
+      }
+
+      if (certaintyIndex != -1 && filter.filtersCertainty() && !filter.acceptsCertainty(parseInt("Certainty", stream.getAttributeValue(certaintyIndex)))) {
+        skipElement();
+        return;
+      }
+
+      String path = pathIndex == -1 ? null : stream.getAttributeValue(pathIndex);
+      String fileAttribute = fileIndex == -1 ? null : stream.getAttributeValue(fileIndex);
+      int line = lineIndex == -1 ? FxCopIssue.NO_LINE : parseInt("Line", stream.getAttributeValue(lineIndex));
       String message = stream.getElementText();
-      filesBuilder.add(new FxCopIssue(stream.getLocation().getLineNumber(), ruleConfigKey, path, fileAttribute, line, message));
+      handler.handle(new FxCopIssue(lineNumber(), ruleConfigKey, dictionaryValue(path), dictionaryValue(fileAttribute), line, message));
     }
 
     private String getRequiredAttribute(String name) {
@@ -113,14 +478,24 @@ public class FxCopReportParser {
       return value;
     }
 
+    /**
+     * The same CheckId, Path and File values are repeated throughout the report, share a single instance of each.
+     */
     @Nullable
-    private Integer getIntAttribute(String name) {
-      String value = getAttribute(name);
-
+    private String dictionaryValue(@Nullable String value) {
       if (value == null) {
         return null;
       }
 
+      String result = dictionary.get(value);
+      if (result == null) {
+        dictionary.put(value, value);
+        result = value;
+      }
+      return result;
+    }
+
+    private int parseInt(String name, String value) {
       try {
         return Integer.parseInt(value);
       } catch (NumberFormatException e) {
@@ -140,7 +515,69 @@ public class FxCopReportParser {
     }
 
     private ParseErrorException parseError(String message) {
-      return new ParseErrorException(message + " in " + file.getAbsolutePath() + " at line " + stream.getLocation().getLineNumber());
+      return new ParseErrorException(message + " in " + file.getAbsolutePath() + " at line " + lineNumber());
+    }
+
+    private int lineNumber() {
+      return lineOffset + stream.getLocation().getLineNumber();
+    }
+
+  }
+
+  /**
+   * Runs the tasks with at most "capacity" of them in flight, and returns their results in the order of the tasks, as soon as each one is next:
+   * only the results of the tasks in flight are retained, whatever the number of tasks.
+   */
+  private static class OrderedTasks {
+
+    private final ExecutorService executorService;
+    private final Iterator<Callable<List<FxCopIssue>>> tasks;
+    private final LinkedList<Future<List<FxCopIssue>>> inFlight = Lists.newLinkedList();
+
+    public OrderedTasks(ExecutorService executorService, Iterator<Callable<List<FxCopIssue>>> tasks, int capacity) {
+      this.executorService = executorService;
+      this.tasks = tasks;
+      while (inFlight.size() < capacity && tasks.hasNext()) {
+        inFlight.addLast(executorService.submit(tasks.next()));
+      }
+    }
+
+    public boolean hasNext() {
+      return !inFlight.isEmpty();
+    }
+
+    public List<FxCopIssue> next() throws InterruptedException, ExecutionException {
+      List<FxCopIssue> result = inFlight.removeFirst().get();
+      if (tasks.hasNext()) {
+        inFlight.addLast(executorService.submit(tasks.next()));
+      }
+      return result;
+    }
+
+  }
+
+  private static class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer buffer;
+
+    public ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+
+      int count = Math.min(length, buffer.remaining());
+      buffer.get(bytes, offset, count);
+      return count;
     }
 
   }
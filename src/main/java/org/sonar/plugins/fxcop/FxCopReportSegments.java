@@ -0,0 +1,231 @@
+/*
+ * SonarQube FxCop Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.fxcop;
+
+import com.google.common.collect.ImmutableList;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Locates the top-level &lt;Target&gt; elements of a report, given as bytes in an ASCII compatible encoding, without parsing it.
+ * Comments, CDATA sections and processing instructions are skipped, as they may contain anything which looks like a tag.
+ * The rest of the report is kept aside, with each target replaced by the line breaks it contained, so that line numbers are preserved.
+ */
+class FxCopReportSegments {
+
+  private static final byte[] TARGET = {'T', 'a', 'r', 'g', 'e', 't'};
+  private static final byte[] COMMENT_START = {'<', '!', '-', '-'};
+  private static final byte[] COMMENT_END = {'-', '-', '>'};
+  private static final byte[] CDATA_START = {'<', '!', '[', 'C', 'D', 'A', 'T', 'A', '['};
+  private static final byte[] CDATA_END = {']', ']', '>'};
+  private static final byte[] PROCESSING_INSTRUCTION_START = {'<', '?'};
+  private static final byte[] PROCESSING_INSTRUCTION_END = {'?', '>'};
+  private static final int CHUNK_SIZE = 64 * 1024;
+
+  private final List<Segment> targets;
+  private final byte[] rest;
+
+  private FxCopReportSegments(List<Segment> targets, byte[] rest) {
+    this.targets = targets;
+    this.rest = rest;
+  }
+
+  public List<Segment> targets() {
+    return targets;
+  }
+
+  public byte[] rest() {
+    return rest;
+  }
+
+  public static FxCopReportSegments scan(ByteBuffer buffer) {
+    ImmutableList.Builder<Segment> targets = ImmutableList.builder();
+    ByteArrayOutputStream rest = new ByteArrayOutputStream();
+
+    int limit = buffer.limit();
+    int lines = 0;
+    int restStart = 0;
+    int targetStart = -1;
+    int targetLines = 0;
+
+    // Bulk copies are much faster than reading a mapped buffer byte per byte
+    byte[] chunk = new byte[CHUNK_SIZE];
+    ByteBuffer source = buffer.duplicate();
+    int chunkStart = 0;
+    while (chunkStart < limit) {
+      int length = Math.min(chunk.length, limit - chunkStart);
+      source.position(chunkStart);
+      source.get(chunk, 0, length);
+      int nextChunkStart = chunkStart + length;
+
+      for (int j = 0; j < length; j++) {
+        byte b = chunk[j];
+        if (b == '\n') {
+          lines++;
+        } else if (b == '<' && (j + 1 == length || chunk[j + 1] == (targetStart == -1 ? 'T' : '/') || chunk[j + 1] == '!' || chunk[j + 1] == '?')) {
+          int i = chunkStart + j;
+          int markupEnd = markupEnd(buffer, i);
+          if (markupEnd != -1) {
+            // "<Target" or "</Target" within comments, CDATA sections and processing instructions are not tags
+            for (int k = i; k < markupEnd; k++) {
+              if (buffer.get(k) == '\n') {
+                lines++;
+              }
+            }
+            nextChunkStart = markupEnd;
+            break;
+          } else if (targetStart == -1 && isTargetName(buffer, i + 1) && !isSelfClosing(buffer, i)) {
+            targetStart = i;
+            targetLines = lines;
+          } else if (targetStart != -1 && i + 1 < limit && buffer.get(i + 1) == '/' && isTargetName(buffer, i + 2)) {
+            int end = i;
+            while (end < limit && buffer.get(end) != '>') {
+              if (buffer.get(end) == '\n') {
+                lines++;
+              }
+              end++;
+            }
+            end = Math.min(end + 1, limit);
+
+            targets.add(new Segment(targetStart, end, targetLines));
+            write(rest, buffer, restStart, targetStart);
+            for (int k = targetLines; k < lines; k++) {
+              rest.write('\n');
+            }
+
+            restStart = end;
+            targetStart = -1;
+            nextChunkStart = end;
+            break;
+          }
+        }
+      }
+
+      chunkStart = nextChunkStart;
+    }
+
+    write(rest, buffer, restStart, targetStart == -1 ? limit : targetStart);
+    return new FxCopReportSegments(targets.build(), rest.toByteArray());
+  }
+
+  /**
+   * Offset following the comment, CDATA section or processing instruction which starts at the given offset, or -1 if there is none.
+   */
+  private static int markupEnd(ByteBuffer buffer, int offset) {
+    byte[] start;
+    byte[] terminator;
+    if (startsWith(buffer, offset, COMMENT_START)) {
+      start = COMMENT_START;
+      terminator = COMMENT_END;
+    } else if (startsWith(buffer, offset, CDATA_START)) {
+      start = CDATA_START;
+      terminator = CDATA_END;
+    } else if (startsWith(buffer, offset, PROCESSING_INSTRUCTION_START)) {
+      start = PROCESSING_INSTRUCTION_START;
+      terminator = PROCESSING_INSTRUCTION_END;
+    } else {
+      return -1;
+    }
+
+    for (int i = offset + start.length; i + terminator.length <= buffer.limit(); i++) {
+      if (startsWith(buffer, i, terminator)) {
+        return i + terminator.length;
+      }
+    }
+    return buffer.limit();
+  }
+
+  private static boolean startsWith(ByteBuffer buffer, int offset, byte[] prefix) {
+    if (offset + prefix.length > buffer.limit()) {
+      return false;
+    }
+
+    for (int i = 0; i < prefix.length; i++) {
+      if (buffer.get(offset + i) != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isTargetName(ByteBuffer buffer, int offset) {
+    int end = offset + TARGET.length;
+    if (end >= buffer.limit()) {
+      return false;
+    }
+
+    for (int i = 0; i < TARGET.length; i++) {
+      if (buffer.get(offset + i) != TARGET[i]) {
+        return false;
+      }
+    }
+
+    byte next = buffer.get(end);
+    return next == '>' || next == '/' || next == ' ' || next == '\t' || next == '\r' || next == '\n';
+  }
+
+  private static boolean isSelfClosing(ByteBuffer buffer, int offset) {
+    int i = offset;
+    while (i < buffer.limit() && buffer.get(i) != '>') {
+      i++;
+    }
+    return i < buffer.limit() && buffer.get(i - 1) == '/';
+  }
+
+  private static void write(ByteArrayOutputStream output, ByteBuffer buffer, int start, int end) {
+    byte[] bytes = new byte[end - start];
+    ByteBuffer source = buffer.duplicate();
+    source.position(start);
+    source.get(bytes);
+    output.write(bytes, 0, bytes.length);
+  }
+
+  /**
+   * Range of bytes of a &lt;Target&gt; element, which starts after "lineOffset" line breaks of the report.
+   */
+  static class Segment {
+
+    private final int start;
+    private final int end;
+    private final int lineOffset;
+
+    public Segment(int start, int end, int lineOffset) {
+      this.start = start;
+      this.end = end;
+      this.lineOffset = lineOffset;
+    }
+
+    public int start() {
+      return start;
+    }
+
+    public int end() {
+      return end;
+    }
+
+    public int lineOffset() {
+      return lineOffset;
+    }
+
+  }
+
+}
@@ -0,0 +1,219 @@
+/*
+ * SonarQube FxCop Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.fxcop;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.io.Closeables;
+import org.sonar.api.rules.Rule;
+import org.sonar.api.rules.RuleParam;
+import org.sonar.api.rules.RulePriority;
+import org.sonar.check.Cardinality;
+
+import javax.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Compact form of the FxCop rule definitions of all languages, generated at build time from the *-rules.xml files
+ * by the FxCopRuleCatalogGenerator.
+ *
+ * The descriptions, which only differ between languages by the repository referenced in their "{rule:repository:key}" links,
+ * are stored once, and only kept encoded: they are decoded each time the rules of a language are created.
+ */
+public class FxCopRuleCatalog {
+
+  public static final String RESOURCE = "/org/sonar/plugins/fxcop/rules.catalog";
+
+  static final int VERSION = 1;
+  static final String RULE_LINK_PREFIX = "{rule:";
+  static final String REPOSITORY_PLACEHOLDER = "${repository}";
+
+  private final byte[][] encodedDescriptions;
+  private final Map<String, LanguageRules> languages;
+
+  private FxCopRuleCatalog(byte[][] encodedDescriptions, Map<String, LanguageRules> languages) {
+    this.encodedDescriptions = encodedDescriptions;
+    this.languages = languages;
+  }
+
+  /**
+   * The packaged catalog, which is the only form of the rule definitions shipped by the plugin.
+   */
+  public static FxCopRuleCatalog instance() {
+    Preconditions.checkState(Holder.INSTANCE != null,
+      "The FxCop rule catalog " + RESOURCE + " is missing: it is generated from src/main/rules by the process-classes phase of the build.");
+    return Holder.INSTANCE;
+  }
+
+  private static class Holder {
+
+    private static final FxCopRuleCatalog INSTANCE = loadResource();
+
+    @Nullable
+    private static FxCopRuleCatalog loadResource() {
+      InputStream input = FxCopRuleCatalog.class.getResourceAsStream(RESOURCE);
+      return input == null ? null : load(input);
+    }
+
+  }
+
+  public List<Rule> createRules(String languageKey) {
+    LanguageRules languageRules = languages.get(languageKey);
+    Preconditions.checkArgument(languageRules != null, "No FxCop rules are available for the language \"" + languageKey + "\".");
+
+    // Rules share their descriptions, which are only decoded once per call and not retained by the catalog
+    String[] descriptions = new String[encodedDescriptions.length];
+    ImmutableList.Builder<Rule> builder = ImmutableList.builder();
+    for (RuleDefinition definition : languageRules.rules) {
+      Rule rule = Rule.create()
+        .setKey(definition.key)
+        .setConfigKey(definition.configKey)
+        .setSeverity(definition.severity)
+        .setCardinality(definition.cardinality)
+        .setName(definition.name)
+        .setDescription(description(descriptions, definition.description, languageRules.linkedRepository));
+      if (definition.status != null) {
+        rule.setStatus(definition.status);
+      }
+      for (String[] param : definition.params) {
+        RuleParam ruleParam = rule.createParameter(param[0]);
+        if (param[1] != null) {
+          ruleParam.setDescription(param[1]);
+        }
+        ruleParam.setType(param[2]);
+        ruleParam.setDefaultValue(param[3]);
+      }
+      builder.add(rule);
+    }
+    return builder.build();
+  }
+
+  @Nullable
+  private String description(String[] descriptions, int index, @Nullable String linkedRepository) {
+    if (index == -1) {
+      return null;
+    }
+
+    String description = descriptions[index];
+    if (description == null) {
+      description = new String(encodedDescriptions[index], Charsets.UTF_8);
+      if (linkedRepository != null) {
+        description = description.replace(RULE_LINK_PREFIX + REPOSITORY_PLACEHOLDER + ":", RULE_LINK_PREFIX + linkedRepository + ":");
+      }
+      descriptions[index] = description;
+    }
+
+    return description;
+  }
+
+  public static FxCopRuleCatalog load(InputStream input) {
+    Preconditions.checkArgument(input != null, "Cannot find the FxCop rule catalog " + RESOURCE);
+
+    DataInputStream data = null;
+    try {
+      data = new DataInputStream(new BufferedInputStream(new GZIPInputStream(input)));
+      Preconditions.checkState(data.readInt() == VERSION, "Unsupported FxCop rule catalog version");
+
+      ImmutableMap.Builder<String, LanguageRules> languages = ImmutableMap.builder();
+      int languageCount = data.readInt();
+      for (int i = 0; i < languageCount; i++) {
+        String languageKey = data.readUTF();
+        String linkedRepository = readNullableUTF(data);
+        List<RuleDefinition> rules = Lists.newArrayList();
+        int ruleCount = data.readInt();
+        for (int j = 0; j < ruleCount; j++) {
+          rules.add(readRule(data));
+        }
+        languages.put(languageKey, new LanguageRules(linkedRepository, rules));
+      }
+
+      byte[][] encodedDescriptions = new byte[data.readInt()][];
+      for (int i = 0; i < encodedDescriptions.length; i++) {
+        encodedDescriptions[i] = new byte[data.readInt()];
+        data.readFully(encodedDescriptions[i]);
+      }
+
+      return new FxCopRuleCatalog(encodedDescriptions, languages.build());
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    } finally {
+      Closeables.closeQuietly(data);
+      Closeables.closeQuietly(input);
+    }
+  }
+
+  private static RuleDefinition readRule(DataInputStream data) throws IOException {
+    RuleDefinition rule = new RuleDefinition();
+    rule.key = data.readUTF();
+    rule.configKey = readNullableUTF(data);
+    rule.severity = RulePriority.valueOf(data.readUTF());
+    rule.cardinality = Cardinality.valueOf(data.readUTF());
+    rule.status = readNullableUTF(data);
+    rule.name = data.readUTF();
+    rule.description = data.readInt();
+    int paramCount = data.readInt();
+    for (int i = 0; i < paramCount; i++) {
+      rule.params.add(new String[] {data.readUTF(), readNullableUTF(data), readNullableUTF(data), readNullableUTF(data)});
+    }
+    return rule;
+  }
+
+  @Nullable
+  private static String readNullableUTF(DataInputStream data) throws IOException {
+    return data.readBoolean() ? data.readUTF() : null;
+  }
+
+  private static class LanguageRules {
+
+    private final String linkedRepository;
+    private final List<RuleDefinition> rules;
+
+    public LanguageRules(@Nullable String linkedRepository, List<RuleDefinition> rules) {
+      this.linkedRepository = linkedRepository;
+      this.rules = rules;
+    }
+
+  }
+
+  private static class RuleDefinition {
+
+    private String key;
+    private String configKey;
+    private RulePriority severity;
+    private Cardinality cardinality;
+    private String status;
+    private String name;
+    private int description;
+    private final List<String[]> params = Lists.newArrayList();
+
+  }
+
+}
@@ -0,0 +1,182 @@
+/*
+ * SonarQube FxCop Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.fxcop;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+import org.sonar.api.rules.Rule;
+import org.sonar.api.rules.RuleParam;
+import org.sonar.api.rules.XMLRuleParser;
+
+import javax.annotation.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Generates the {@link FxCopRuleCatalog} from the &lt;language&gt;-rules.xml files of a directory. Run by the build at process-classes,
+ * and excluded from the jar, as are the XML files themselves.
+ *
+ * Usage: FxCopRuleCatalogGenerator src/main/rules target/classes/org/sonar/plugins/fxcop/rules.catalog
+ */
+public class FxCopRuleCatalogGenerator {
+
+  private static final String RULES_FILE_SUFFIX = "-rules.xml";
+  private static final Pattern RULE_LINK_PATTERN = Pattern.compile(Pattern.quote(FxCopRuleCatalog.RULE_LINK_PREFIX) + "([^:}]++):");
+
+  private FxCopRuleCatalogGenerator() {
+  }
+
+  public static void main(String[] args) throws IOException {
+    Preconditions.checkArgument(args.length == 2, "Usage: FxCopRuleCatalogGenerator <rules directory> <catalog file>");
+    generate(new File(args[0]), new File(args[1]));
+  }
+
+  public static void generate(File rulesDirectory, File catalogFile) throws IOException {
+    File[] files = rulesDirectory.listFiles();
+    Preconditions.checkArgument(files != null, "Cannot list the rules directory " + rulesDirectory.getAbsolutePath());
+    Arrays.sort(files);
+
+    XMLRuleParser parser = new XMLRuleParser();
+    Map<String, List<Rule>> rulesByLanguage = Maps.newLinkedHashMap();
+    for (File file : files) {
+      if (file.getName().endsWith(RULES_FILE_SUFFIX)) {
+        String languageKey = file.getName().substring(0, file.getName().length() - RULES_FILE_SUFFIX.length());
+        rulesByLanguage.put(languageKey, parser.parse(file));
+      }
+    }
+
+    Files.createParentDirs(catalogFile);
+    OutputStream output = new FileOutputStream(catalogFile);
+    try {
+      write(rulesByLanguage, output);
+    } finally {
+      Closeables.closeQuietly(output);
+    }
+  }
+
+  /**
+   * Writes the catalog of the rules of every language, given in the order of their repository.
+   */
+  private static void write(Map<String, List<Rule>> rulesByLanguage, OutputStream output) throws IOException {
+    List<String> descriptions = Lists.newArrayList();
+    Map<String, Integer> descriptionIndexes = Maps.newHashMap();
+
+    Map<String, String> linkedRepositories = Maps.newLinkedHashMap();
+    for (Map.Entry<String, List<Rule>> entry : rulesByLanguage.entrySet()) {
+      linkedRepositories.put(entry.getKey(), linkedRepository(entry.getKey(), entry.getValue()));
+    }
+
+    DataOutputStream data = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(output)));
+    try {
+      data.writeInt(FxCopRuleCatalog.VERSION);
+
+      data.writeInt(rulesByLanguage.size());
+      for (Map.Entry<String, List<Rule>> entry : rulesByLanguage.entrySet()) {
+        String linkedRepository = linkedRepositories.get(entry.getKey());
+        data.writeUTF(entry.getKey());
+        writeNullableUTF(data, linkedRepository);
+        data.writeInt(entry.getValue().size());
+        for (Rule rule : entry.getValue()) {
+          int descriptionIndex = -1;
+          if (rule.getDescription() != null) {
+            String description = linkedRepository == null ? rule.getDescription() : rule.getDescription().replace(
+              FxCopRuleCatalog.RULE_LINK_PREFIX + linkedRepository + ":", FxCopRuleCatalog.RULE_LINK_PREFIX + FxCopRuleCatalog.REPOSITORY_PLACEHOLDER + ":");
+            Integer index = descriptionIndexes.get(description);
+            if (index == null) {
+              index = descriptions.size();
+              descriptions.add(description);
+              descriptionIndexes.put(description, index);
+            }
+            descriptionIndex = index;
+          }
+          writeRule(data, rule, descriptionIndex);
+        }
+      }
+
+      data.writeInt(descriptions.size());
+      for (String description : descriptions) {
+        byte[] bytes = description.getBytes(Charsets.UTF_8);
+        data.writeInt(bytes.length);
+        data.write(bytes);
+      }
+    } finally {
+      data.close();
+    }
+  }
+
+  private static void writeRule(DataOutputStream data, Rule rule, int descriptionIndex) throws IOException {
+    data.writeUTF(rule.getKey());
+    writeNullableUTF(data, rule.getConfigKey());
+    data.writeUTF(rule.getSeverity().name());
+    data.writeUTF(rule.getCardinality().name());
+    writeNullableUTF(data, rule.getStatus());
+    data.writeUTF(rule.getName());
+    data.writeInt(descriptionIndex);
+    data.writeInt(rule.getParams().size());
+    for (RuleParam param : rule.getParams()) {
+      data.writeUTF(param.getKey());
+      writeNullableUTF(data, param.getDescription());
+      writeNullableUTF(data, param.getType());
+      writeNullableUTF(data, param.getDefaultValue());
+    }
+  }
+
+  /**
+   * The repository key used in the "{rule:repository:key}" links of the descriptions, which must be the same for all of them.
+   */
+  @Nullable
+  private static String linkedRepository(String languageKey, List<Rule> rules) {
+    String result = null;
+    for (Rule rule : rules) {
+      if (rule.getDescription() != null) {
+        Matcher matcher = RULE_LINK_PATTERN.matcher(rule.getDescription());
+        while (matcher.find()) {
+          Preconditions.checkState(result == null || result.equals(matcher.group(1)),
+            "The " + languageKey + " FxCop rules link to both the repositories \"" + result + "\" and \"" + matcher.group(1) + "\".");
+          result = matcher.group(1);
+        }
+      }
+    }
+    return result;
+  }
+
+  private static void writeNullableUTF(DataOutputStream data, @Nullable String value) throws IOException {
+    data.writeBoolean(value != null);
+    if (value != null) {
+      data.writeUTF(value);
+    }
+  }
+
+}
@@ -29,19 +29,25 @@ public class FxCopRuleRepository extends RuleRepository {
 
   private static final String REPOSITORY_NAME = "FxCop / Code Analysis";
 
-  private final XMLRuleParser xmlRuleParser;
   private final String languageKey;
 
-  public FxCopRuleRepository(FxCopConfiguration fxCopConf, XMLRuleParser xmlRuleParser) {
+  public FxCopRuleRepository(FxCopConfiguration fxCopConf) {
     super(fxCopConf.repositoryKey(), fxCopConf.languageKey());
     setName(REPOSITORY_NAME);
-    this.xmlRuleParser = xmlRuleParser;
     this.languageKey = fxCopConf.languageKey();
   }
 
+  /**
+   * @deprecated The rules are loaded from the {@link FxCopRuleCatalog}, the XML rule parser is no longer used.
+   */
+  @Deprecated
+  public FxCopRuleRepository(FxCopConfiguration fxCopConf, XMLRuleParser xmlRuleParser) {
+    this(fxCopConf);
+  }
+
   @Override
   public List<Rule> createRules() {
-    return xmlRuleParser.parse(getClass().getResourceAsStream("/org/sonar/plugins/fxcop/" + languageKey + "-rules.xml"));
+    return FxCopRuleCatalog.instance().createRules(languageKey);
   }
 
 }
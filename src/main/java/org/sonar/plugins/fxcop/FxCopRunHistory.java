@@ -0,0 +1,138 @@
+/*
+ * SonarQube FxCop Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.fxcop;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Durations of the previous FxCopCmd runs, together with the size of their assembly and their number of active rules.
+ * Stored as one tab-separated line per run, appended as runs end, and compacted to the most recent runs once it grows too large.
+ */
+public class FxCopRunHistory {
+
+  private static final Logger LOG = LoggerFactory.getLogger(FxCopRunHistory.class);
+  private static final int MAX_RUNS = 100;
+
+  private final File file;
+
+  public FxCopRunHistory(File file) {
+    this.file = file;
+  }
+
+  public File file() {
+    return file;
+  }
+
+  /**
+   * The most recent runs, oldest first. Malformed lines are ignored.
+   */
+  public synchronized List<Run> runs() {
+    List<Run> runs = Lists.newArrayList();
+    for (String line : readLines()) {
+      Run run = Run.parse(line);
+      if (run != null) {
+        runs.add(run);
+      }
+    }
+    return ImmutableList.copyOf(runs.subList(Math.max(0, runs.size() - MAX_RUNS), runs.size()));
+  }
+
+  public synchronized void record(Run run) {
+    try {
+      Files.createParentDirs(file);
+      List<String> lines = readLines();
+      if (lines.size() >= 2 * MAX_RUNS) {
+        List<String> kept = Lists.newArrayList(lines.subList(lines.size() - MAX_RUNS + 1, lines.size()));
+        kept.add(run.toString());
+        Files.write(Joiner.on('\n').join(kept) + "\n", file, Charsets.UTF_8);
+      } else {
+        Files.append(run + "\n", file, Charsets.UTF_8);
+      }
+    } catch (IOException e) {
+      LOG.warn("Unable to record the FxCopCmd.exe run into: " + file.getAbsolutePath(), e);
+    }
+  }
+
+  private List<String> readLines() {
+    if (!file.isFile()) {
+      return ImmutableList.of();
+    }
+
+    try {
+      return Files.readLines(file, Charsets.UTF_8);
+    } catch (IOException e) {
+      LOG.warn("Unable to read the FxCopCmd.exe run history: " + file.getAbsolutePath(), e);
+      return ImmutableList.of();
+    }
+  }
+
+  public static class Run {
+
+    private final long durationMillis;
+    private final long assemblyBytes;
+    private final int ruleCount;
+
+    public Run(long durationMillis, long assemblyBytes, int ruleCount) {
+      this.durationMillis = durationMillis;
+      this.assemblyBytes = assemblyBytes;
+      this.ruleCount = ruleCount;
+    }
+
+    public long durationMillis() {
+      return durationMillis;
+    }
+
+    public long assemblyBytes() {
+      return assemblyBytes;
+    }
+
+    public int ruleCount() {
+      return ruleCount;
+    }
+
+    private static Run parse(String line) {
+      Iterator<String> fields = Splitter.on('\t').trimResults().split(line).iterator();
+      try {
+        return new Run(Long.parseLong(fields.next()), Long.parseLong(fields.next()), Integer.parseInt(fields.next()));
+      } catch (RuntimeException e) {
+        return null;
+      }
+    }
+
+    @Override
+    public String toString() {
+      return durationMillis + "\t" + assemblyBytes + "\t" + ruleCount;
+    }
+
+  }
+
+}
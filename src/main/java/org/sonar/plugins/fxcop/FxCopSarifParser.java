@@ -0,0 +1,382 @@
+/*
+ * SonarQube FxCop Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.fxcop;
+
+import com.google.common.base.Throwables;
+import com.google.common.io.Closeables;
+
+import javax.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.regex.Pattern;
+
+/**
+ * Streaming parser of the SARIF logs written by the Roslyn analyzers, which hands their results to the handler as FxCop issues.
+ * Only the results of the runs are read, everything else is skipped as it is tokenized: the rule ID, the message,
+ * and the file and start line of the first location of each result. Both the 1.0 format, where the location is a "resultFile",
+ * and the 2.x one, where it is a "physicalLocation", are supported. SARIF has no notion of certainty, so all results are certain.
+ */
+public class FxCopSarifParser {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final Pattern WINDOWS_DRIVE_PATH = Pattern.compile("/[A-Za-z]:.*");
+
+  /**
+   * Whether the file is a JSON document rather than an XML one, looking at its first significant character.
+   */
+  public static boolean isSarif(File file) {
+    if (!file.isFile()) {
+      return false;
+    }
+
+    InputStream input = null;
+    try {
+      input = new BufferedInputStream(new FileInputStream(file));
+      InputStreamReader reader = new InputStreamReader(input, FxCopReportParser.detectEncoding(input));
+      int c;
+      do {
+        c = reader.read();
+      } while (c != -1 && Character.isWhitespace(c));
+      return c == '{';
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    } finally {
+      Closeables.closeQuietly(input);
+    }
+  }
+
+  public void parse(File file, FxCopIssueHandler handler) {
+    parse(file, FxCopIssueFilter.all(), handler);
+  }
+
+  public void parse(File file, FxCopIssueFilter filter, FxCopIssueHandler handler) {
+    InputStream input = null;
+    try {
+      input = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+      InputStreamReader reader = new InputStreamReader(input, FxCopReportParser.detectEncoding(input));
+      new Parser(new FxCopJsonReader(reader, file.getAbsolutePath()), filter, handler).parse();
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to read the SARIF report: " + file.getAbsolutePath(), e);
+    } finally {
+      Closeables.closeQuietly(input);
+    }
+  }
+
+  private static class Parser {
+
+    private final FxCopJsonReader json;
+    private final FxCopIssueFilter filter;
+    private final FxCopIssueHandler handler;
+
+    private String path;
+    private String file;
+    private int line;
+
+    public Parser(FxCopJsonReader json, FxCopIssueFilter filter, FxCopIssueHandler handler) {
+      this.json = json;
+      this.filter = filter;
+      this.handler = handler;
+    }
+
+    public void parse() {
+      json.beginObject();
+      while (json.hasNext()) {
+        if ("runs".equals(json.nextName())) {
+          json.beginArray();
+          while (json.hasNext()) {
+            handleRun();
+          }
+          json.endArray();
+        } else {
+          json.skipValue();
+        }
+      }
+      json.endObject();
+    }
+
+    private void handleRun() {
+      json.beginObject();
+      while (json.hasNext()) {
+        if ("results".equals(json.nextName()) && json.peek() == FxCopJsonReader.Token.BEGIN_ARRAY) {
+          json.beginArray();
+          while (json.hasNext()) {
+            handleResult();
+          }
+          json.endArray();
+        } else {
+          json.skipValue();
+        }
+      }
+      json.endObject();
+    }
+
+    private void handleResult() {
+      json.peek();
+      int reportLine = json.line();
+
+      String ruleId = null;
+      String message = null;
+      boolean suppressed = false;
+      boolean notFailure = false;
+      path = null;
+      file = null;
+      line = FxCopIssue.NO_LINE;
+      boolean hasLocation = false;
+
+      json.beginObject();
+      while (json.hasNext()) {
+        String name = json.nextName();
+        if ("ruleId".equals(name)) {
+          ruleId = json.nextString();
+        } else if ("rule".equals(name) && ruleId == null) {
+          ruleId = ruleReferenceId();
+        } else if ("message".equals(name)) {
+          message = message();
+        } else if ("locations".equals(name) && json.peek() == FxCopJsonReader.Token.BEGIN_ARRAY) {
+          json.beginArray();
+          while (json.hasNext()) {
+            if (hasLocation) {
+              json.skipValue();
+            } else {
+              hasLocation = true;
+              handleLocation();
+            }
+          }
+          json.endArray();
+        } else if ("suppressions".equals(name) || "suppressionStates".equals(name)) {
+          suppressed = isSuppressed();
+        } else if ("kind".equals(name)) {
+          String kind = json.nextString();
+          notFailure = "pass".equals(kind) || "notApplicable".equals(kind);
+        } else {
+          json.skipValue();
+        }
+      }
+      json.endObject();
+
+      if (ruleId == null) {
+        throw json.error("Missing the rule ID of the result", reportLine);
+      }
+      if (suppressed || notFailure || !filter.acceptsRuleConfigKey(ruleId)) {
+        return;
+      }
+
+      // Messages given by reference to the rule metadata are not resolved
+      handler.handle(new FxCopIssue(reportLine, ruleId, path, file, line, message == null ? ruleId : message));
+    }
+
+    @Nullable
+    private String ruleReferenceId() {
+      if (json.peek() != FxCopJsonReader.Token.BEGIN_OBJECT) {
+        json.skipValue();
+        return null;
+      }
+
+      String id = null;
+      json.beginObject();
+      while (json.hasNext()) {
+        if ("id".equals(json.nextName())) {
+          id = json.nextString();
+        } else {
+          json.skipValue();
+        }
+      }
+      json.endObject();
+      return id;
+    }
+
+    /**
+     * A plain string in SARIF 1.0, an object with a "text" property in 2.x.
+     */
+    @Nullable
+    private String message() {
+      FxCopJsonReader.Token token = json.peek();
+      if (token == FxCopJsonReader.Token.STRING) {
+        return json.nextString();
+      } else if (token != FxCopJsonReader.Token.BEGIN_OBJECT) {
+        json.skipValue();
+        return null;
+      }
+
+      String text = null;
+      json.beginObject();
+      while (json.hasNext()) {
+        if ("text".equals(json.nextName())) {
+          text = json.nextString();
+        } else {
+          json.skipValue();
+        }
+      }
+      json.endObject();
+      return text;
+    }
+
+    /**
+     * Suppressions are objects in SARIF 2.1, whose status may tell that they were rejected, and strings in 2.0.
+     */
+    private boolean isSuppressed() {
+      if (json.peek() != FxCopJsonReader.Token.BEGIN_ARRAY) {
+        json.skipValue();
+        return false;
+      }
+
+      boolean suppressed = false;
+      json.beginArray();
+      while (json.hasNext()) {
+        if (json.peek() == FxCopJsonReader.Token.BEGIN_OBJECT) {
+          String status = null;
+          json.beginObject();
+          while (json.hasNext()) {
+            if ("status".equals(json.nextName())) {
+              status = json.nextString();
+            } else {
+              json.skipValue();
+            }
+          }
+          json.endObject();
+          suppressed |= !"rejected".equals(status) && !"underReview".equals(status);
+        } else {
+          json.skipValue();
+          suppressed = true;
+        }
+      }
+      json.endArray();
+      return suppressed;
+    }
+
+    private void handleLocation() {
+      if (json.peek() != FxCopJsonReader.Token.BEGIN_OBJECT) {
+        json.skipValue();
+        return;
+      }
+
+      json.beginObject();
+      while (json.hasNext()) {
+        String name = json.nextName();
+        if ("physicalLocation".equals(name) || "resultFile".equals(name)) {
+          handlePhysicalLocation();
+        } else {
+          json.skipValue();
+        }
+      }
+      json.endObject();
+    }
+
+    private void handlePhysicalLocation() {
+      if (json.peek() != FxCopJsonReader.Token.BEGIN_OBJECT) {
+        json.skipValue();
+        return;
+      }
+
+      json.beginObject();
+      while (json.hasNext()) {
+        String name = json.nextName();
+        if ("uri".equals(name)) {
+          // SARIF 1.0
+          setFile(json.nextString());
+        } else if ("artifactLocation".equals(name) || "fileLocation".equals(name)) {
+          handleArtifactLocation();
+        } else if ("region".equals(name)) {
+          handleRegion();
+        } else {
+          json.skipValue();
+        }
+      }
+      json.endObject();
+    }
+
+    private void handleArtifactLocation() {
+      if (json.peek() != FxCopJsonReader.Token.BEGIN_OBJECT) {
+        json.skipValue();
+        return;
+      }
+
+      json.beginObject();
+      while (json.hasNext()) {
+        if ("uri".equals(json.nextName())) {
+          setFile(json.nextString());
+        } else {
+          json.skipValue();
+        }
+      }
+      json.endObject();
+    }
+
+    private void handleRegion() {
+      if (json.peek() != FxCopJsonReader.Token.BEGIN_OBJECT) {
+        json.skipValue();
+        return;
+      }
+
+      json.beginObject();
+      while (json.hasNext()) {
+        if ("startLine".equals(json.nextName())) {
+          line = json.nextInt();
+        } else {
+          json.skipValue();
+        }
+      }
+      json.endObject();
+    }
+
+    /**
+     * Splits the file of the URI into the directory and the file name, which is how FxCop reports locate issues.
+     */
+    private void setFile(String uri) {
+      String filePath = filePath(uri);
+      int separator = Math.max(filePath.lastIndexOf('/'), filePath.lastIndexOf('\\'));
+      if (separator == -1) {
+        path = ".";
+        file = filePath;
+      } else {
+        path = separator == 0 ? filePath.substring(0, 1) : filePath.substring(0, separator);
+        file = filePath.substring(separator + 1);
+      }
+    }
+
+  }
+
+  /**
+   * Decodes "file:" and relative URIs. Values which are not URIs, such as the plain Windows paths of some Roslyn versions, are kept as is.
+   */
+  static String filePath(String uri) {
+    try {
+      URI parsed = new URI(uri);
+      if (parsed.getScheme() != null && !"file".equalsIgnoreCase(parsed.getScheme())) {
+        return uri;
+      }
+      String filePath = parsed.getPath();
+      if (filePath == null) {
+        return uri;
+      }
+      return WINDOWS_DRIVE_PATH.matcher(filePath).matches() ? filePath.substring(1) : filePath;
+    } catch (URISyntaxException e) {
+      return uri;
+    }
+  }
+
+}
@@ -0,0 +1,203 @@
+/*
+ * SonarQube FxCop Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.fxcop;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.BatchExtension;
+import org.sonar.api.batch.InstantiationStrategy;
+import org.sonar.api.batch.bootstrap.ProjectDefinition;
+import org.sonar.api.batch.bootstrap.ProjectReactor;
+import org.sonar.api.config.Settings;
+
+import javax.annotation.Nullable;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Launches FxCopCmd.exe for all the modules of the analyzed project as soon as the first of them is analyzed,
+ * so that the slow FxCop executions of the modules overlap instead of running one after the other.
+ * Each module's sensor then only waits for the reports of its own module.
+ */
+@InstantiationStrategy(InstantiationStrategy.PER_BATCH)
+public class FxCopScheduler implements BatchExtension {
+
+  private static final Logger LOG = LoggerFactory.getLogger(FxCopScheduler.class);
+
+  private final ProjectReactor reactor;
+  private final Settings settings;
+  private final Map<String, Map<File, LaunchedJob>> launchedByRepository = Maps.newHashMap();
+
+  /**
+   * Runs FxCopCmd.exe for a single module, and returns its report files.
+   */
+  public interface Job {
+
+    /**
+     * Whether the sensor will analyze the module: FxCopCmd.exe is not launched for the other ones, as their reports would never be imported.
+     */
+    boolean accepts(ProjectDefinition module, Settings moduleSettings);
+
+    /**
+     * Time after which the sensor of the module stops waiting for the job, counted from its start, or 0 to wait for as long as it runs.
+     */
+    long timeoutMillis(Settings moduleSettings);
+
+    List<File> run(Settings moduleSettings, File workingDir);
+
+  }
+
+  public FxCopScheduler(ProjectReactor reactor, Settings settings) {
+    this.reactor = reactor;
+    this.settings = settings;
+  }
+
+  /**
+   * Launches the job of every module it accepts, at most "parallelism" at once, on daemon threads which do not keep the JVM alive after a failure.
+   * Only the first call for a given repository launches anything, the later ones are no-ops.
+   */
+  public synchronized void launch(FxCopConfiguration fxCopConf, int parallelism, final Job job) {
+    if (launchedByRepository.containsKey(fxCopConf.repositoryKey())) {
+      return;
+    }
+    Map<File, LaunchedJob> launched = Maps.newHashMap();
+    launchedByRepository.put(fxCopConf.repositoryKey(), launched);
+
+    List<ProjectDefinition> modules = Lists.newArrayList();
+    List<Settings> modulesSettings = Lists.newArrayList();
+    for (ProjectDefinition module : reactor.getProjects()) {
+      Settings moduleSettings = moduleSettings(module);
+      if (module.getWorkDir() != null && job.accepts(module, moduleSettings)) {
+        modules.add(module);
+        modulesSettings.add(moduleSettings);
+      }
+    }
+    if (modules.isEmpty()) {
+      return;
+    }
+
+    int threads = Math.max(1, Math.min(parallelism, modules.size()));
+    LOG.info("Launching FxCopCmd.exe for " + modules.size() + " module(s), using up to " + threads + " concurrent processes.");
+
+    ExecutorService executorService = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setNameFormat("fxcop-scheduler-%d").setDaemon(true).build());
+    try {
+      for (int i = 0; i < modules.size(); i++) {
+        final File workingDir = modules.get(i).getWorkDir();
+        final Settings moduleSettings = modulesSettings.get(i);
+        final LaunchedJob launchedJob = new LaunchedJob(job.timeoutMillis(moduleSettings));
+        launchedJob.future = executorService.submit(new Callable<List<File>>() {
+          @Override
+          public List<File> call() {
+            launchedJob.started.countDown();
+            return job.run(moduleSettings, workingDir);
+          }
+        });
+        launched.put(key(workingDir), launchedJob);
+      }
+    } finally {
+      // Already submitted jobs still run to completion, but the threads end with the last one
+      executorService.shutdown();
+    }
+  }
+
+  /**
+   * Waits for the reports of the module whose working directory is given, or returns null if no job was launched for it.
+   * The job is cancelled when it does not complete within its timeout, which only starts once it runs: before, it waits for the jobs of the previous modules.
+   */
+  @Nullable
+  public List<File> await(String repositoryKey, File workingDir) {
+    LaunchedJob launchedJob;
+    synchronized (this) {
+      Map<File, LaunchedJob> launched = launchedByRepository.get(repositoryKey);
+      launchedJob = launched == null ? null : launched.remove(key(workingDir));
+    }
+    if (launchedJob == null) {
+      return null;
+    }
+
+    Future<List<File>> future = launchedJob.future;
+    try {
+      if (launchedJob.timeoutMillis <= 0) {
+        return future.get();
+      }
+
+      launchedJob.started.await();
+      return future.get(launchedJob.timeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      future.cancel(true);
+      throw new IllegalStateException("FxCopCmd.exe did not complete within " + launchedJob.timeoutMillis + " ms for the module whose working directory is: "
+        + workingDir.getAbsolutePath(), e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  /**
+   * Global settings, overridden by the properties of the module and of its parents, the closest one winning.
+   */
+  @VisibleForTesting
+  Settings moduleSettings(ProjectDefinition module) {
+    List<ProjectDefinition> hierarchy = Lists.newArrayList();
+    for (ProjectDefinition current = module; current != null; current = current.getParent()) {
+      hierarchy.add(0, current);
+    }
+
+    Settings moduleSettings = new Settings(settings);
+    for (ProjectDefinition current : hierarchy) {
+      moduleSettings.addProperties(current.getProperties());
+    }
+    return moduleSettings;
+  }
+
+  private static File key(File workingDir) {
+    return workingDir.getAbsoluteFile();
+  }
+
+  private static class LaunchedJob {
+
+    private final long timeoutMillis;
+    private final CountDownLatch started = new CountDownLatch(1);
+    private Future<List<File>> future;
+
+    public LaunchedJob(long timeoutMillis) {
+      this.timeoutMillis = timeoutMillis;
+    }
+
+  }
+
+}
@@ -20,12 +20,23 @@
 package org.sonar.plugins.fxcop;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
 import com.google.common.base.Splitter;
+import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.Sets;
+import com.google.common.collect.Table;
+import com.google.common.io.Files;
+import com.google.common.primitives.Ints;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sonar.api.CoreProperties;
 import org.sonar.api.batch.Sensor;
 import org.sonar.api.batch.SensorContext;
+import org.sonar.api.batch.bootstrap.ProjectDefinition;
 import org.sonar.api.component.ResourcePerspectives;
 import org.sonar.api.config.Settings;
 import org.sonar.api.issue.Issuable;
@@ -39,33 +50,61 @@ import org.sonar.api.scan.filesystem.ModuleFileSystem;
 import javax.annotation.Nullable;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class FxCopSensor implements Sensor {
 
   private static final String CUSTOM_RULE_KEY = "CustomRuleTemplate";
   private static final String CUSTOM_RULE_CHECK_ID_PARAMETER = "CheckId";
   private static final Logger LOG = LoggerFactory.getLogger(FxCopSensor.class);
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+  @VisibleForTesting
+  static final int MAX_BUFFERED_ISSUES = 10000;
+  private static final Ordering<FxCopIssue> LINE_ORDERING = new Ordering<FxCopIssue>() {
+    @Override
+    public int compare(FxCopIssue left, FxCopIssue right) {
+      return Ints.compare(left.lineOrNoLine(), right.lineOrNoLine());
+    }
+  };
 
   private final FxCopConfiguration fxCopConf;
   private final Settings settings;
   private final RulesProfile profile;
   private final ModuleFileSystem fileSystem;
   private final ResourcePerspectives perspectives;
+  private final FxCopScheduler scheduler;
 
   public FxCopSensor(FxCopConfiguration fxCopConf, Settings settings, RulesProfile profile, ModuleFileSystem fileSystem, ResourcePerspectives perspectives) {
+    this(fxCopConf, settings, profile, fileSystem, perspectives, null);
+  }
+
+  /**
+   * When a scheduler is given, FxCopCmd.exe is launched for all the modules at once by the first analyzed one.
+   */
+  public FxCopSensor(FxCopConfiguration fxCopConf, Settings settings, RulesProfile profile, ModuleFileSystem fileSystem, ResourcePerspectives perspectives,
+    @Nullable FxCopScheduler scheduler) {
     this.fxCopConf = fxCopConf;
     this.settings = settings;
     this.profile = profile;
     this.fileSystem = fileSystem;
     this.perspectives = perspectives;
+    this.scheduler = scheduler;
   }
 
   @Override
   public boolean shouldExecuteOnProject(Project project) {
+    return shouldExecute(hasFilesToAnalyze());
+  }
+
+  private boolean shouldExecute(boolean hasFilesToAnalyze) {
     boolean shouldExecute;
 
-    if (!hasFilesToAnalyze()) {
+    if (!hasFilesToAnalyze) {
       shouldExecute = false;
     } else if (profile.getActiveRulesByRepository(fxCopConf.repositoryKey()).isEmpty()) {
       LOG.info("All FxCop rules are disabled, skipping its execution.");
@@ -81,48 +120,600 @@ public class FxCopSensor implements Sensor {
     return !fileSystem.files(FileQuery.onSource().onLanguage(fxCopConf.languageKey())).isEmpty();
   }
 
+  /**
+   * The files of the other modules are not indexed yet: a module of the language with source directories is assumed to have files to analyze.
+   */
+  private static boolean hasFilesToAnalyze(ProjectDefinition module, Settings moduleSettings, String languageKey) {
+    return languageKey.equals(moduleSettings.getString(CoreProperties.PROJECT_LANGUAGE_PROPERTY)) && !module.getSourceDirs().isEmpty();
+  }
+
   @Override
   public void analyse(Project project, SensorContext context) {
-    analyse(context, new FileProvider(project, context), new FxCopRulesetWriter(), new FxCopReportParser(), new FxCopExecutor());
+    analyse(context, new FileProvider(project, context), new FxCopRulesetWriter(), new FxCopReportParser(), new FxCopExecutor(fxCopConf.processSlots(settings)));
   }
 
   @VisibleForTesting
   void analyse(SensorContext context, FileProvider fileProvider, FxCopRulesetWriter writer, FxCopReportParser parser, FxCopExecutor executor) {
     fxCopConf.checkProperties(settings);
 
-    File rulesetFile = new File(fileSystem.workingDir(), "fxcop-sonarqube.ruleset");
-    writer.write(enabledRuleConfigKeys(), rulesetFile);
+    RuleKeyIndex ruleKeyIndex = new RuleKeyIndex(profile.getActiveRulesByRepository(fxCopConf.repositoryKey()));
+    FxCopMetrics metrics = new FxCopMetrics();
+
+    boolean reportImport = fxCopConf.isReportImport(settings);
+    List<File> reportFiles;
+    if (reportImport) {
+      reportFiles = importedReportFiles();
+      LOG.info("Importing " + reportFiles.size() + " existing FxCop report(s) instead of running FxCopCmd.exe.");
+    } else {
+      reportFiles = executeFxCop(writer, executor, ruleKeyIndex, metrics);
+    }
+
+    // Imported reports were produced with their own ruleset, and may contain issues of rules which are not active in the profile,
+    // as may reports of FxCopCmd.exe which do not match the ruleset: they are skipped and counted in both cases
+    Collection<String> acceptedRuleConfigKeys = ruleKeyIndex.ruleConfigKeys();
+    int minimumCertainty = settings.getInt(fxCopConf.minimumCertaintyPropertyKey());
+    FxCopIssueFilter filter = new FxCopIssueFilter(acceptedRuleConfigKeys, minimumCertainty);
+
+    IssueImporter importer = new IssueImporter(fileProvider, ruleKeyIndex);
+    FxCopIssuePipeline.Producer producer = new ReportProducer(parser, reportFiles, filter, parallelism());
+    if (settings.getBoolean(fxCopConf.issueFilePropertyKey())) {
+      producer = new IssueFileProducer(producer, new File(fileSystem.workingDir(), "fxcop-issues.bin"),
+        issueFileKey(reportFiles, acceptedRuleConfigKeys, minimumCertainty));
+    }
+    long start = System.nanoTime();
+    if (settings.getBoolean(fxCopConf.pipelinedPropertyKey())) {
+      new FxCopIssuePipeline().run(producer, importer);
+    } else {
+      producer.produce(importer);
+    }
+    importer.submit();
+    metrics.addTime("parsing", System.nanoTime() - start - importer.resolutionNanos() - importer.submissionNanos());
+    metrics.addTime("resolution", importer.resolutionNanos());
+    metrics.addTime("submission", importer.submissionNanos());
+
+    importer.countInto(metrics);
+    metrics.count("unknownRuleMessages", filter.rejectedMessages());
+    if (!reportImport && filter.rejectedMessages() > 0) {
+      LOG.warn("Skipped " + filter.rejectedMessages() + " FxCop message(s) of rules which are not active in the profile.");
+    }
+    metrics.count("belowCertainty", filter.rejectedIssues());
+    writeMetrics(metrics);
+  }
+
+  private void writeMetrics(FxCopMetrics metrics) {
+    File metricsFile = new File(fileSystem.workingDir(), "fxcop-metrics.json");
+    try {
+      metrics.write(metricsFile);
+    } catch (IOException e) {
+      LOG.warn("Unable to write the FxCop metrics file: " + metricsFile.getAbsolutePath(), e);
+    }
+    LOG.info(metrics.summary());
+  }
+
+  /**
+   * Imported reports may also be SARIF logs of the Roslyn analyzers, which are then parsed one report after the other.
+   */
+  private static class ReportProducer implements FxCopIssuePipeline.Producer {
+
+    private final FxCopReportParser parser;
+    private final List<File> reportFiles;
+    private final FxCopIssueFilter filter;
+    private final int parallelism;
+
+    public ReportProducer(FxCopReportParser parser, List<File> reportFiles, FxCopIssueFilter filter, int parallelism) {
+      this.parser = parser;
+      this.reportFiles = reportFiles;
+      this.filter = filter;
+      this.parallelism = parallelism;
+    }
+
+    @Override
+    public void produce(FxCopIssueHandler handler) {
+      if (!containsSarif()) {
+        if (reportFiles.size() == 1) {
+          parser.parse(reportFiles.get(0), filter, handler, parallelism);
+        } else {
+          parser.parse(reportFiles, filter, handler, parallelism);
+        }
+        return;
+      }
+
+      FxCopSarifParser sarifParser = new FxCopSarifParser();
+      for (File reportFile : reportFiles) {
+        if (FxCopSarifParser.isSarif(reportFile)) {
+          sarifParser.parse(reportFile, filter, handler);
+        } else {
+          parser.parse(reportFile, filter, handler, parallelism);
+        }
+      }
+    }
+
+    private boolean containsSarif() {
+      for (File reportFile : reportFiles) {
+        if (FxCopSarifParser.isSarif(reportFile)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+  }
+
+  /**
+   * Replays the issues of the binary issue file when it was written from the same reports and filter, otherwise
+   * parses the reports and writes their issues into it for the next analysis.
+   */
+  private static class IssueFileProducer implements FxCopIssuePipeline.Producer {
+
+    private final FxCopIssuePipeline.Producer reportProducer;
+    private final File issueFile;
+    private final String key;
+
+    public IssueFileProducer(FxCopIssuePipeline.Producer reportProducer, File issueFile, String key) {
+      this.reportProducer = reportProducer;
+      this.issueFile = issueFile;
+      this.key = key;
+    }
+
+    @Override
+    public void produce(final FxCopIssueHandler handler) {
+      FxCopIssueFile.Reader reader = FxCopIssueFile.open(issueFile, key);
+      if (reader != null) {
+        LOG.info("The FxCop reports did not change since the previous analysis, replaying their issues from: " + issueFile.getAbsolutePath());
+        reader.replay(handler);
+        return;
+      }
+
+      final FxCopIssueFile.Writer writer;
+      try {
+        writer = new FxCopIssueFile.Writer(issueFile, key);
+      } catch (IOException e) {
+        LOG.warn("Unable to write the FxCop issue file: " + issueFile.getAbsolutePath(), e);
+        reportProducer.produce(handler);
+        return;
+      }
+
+      try {
+        reportProducer.produce(new FxCopIssueHandler() {
+          @Override
+          public void handle(FxCopIssue issue) {
+            writer.handle(issue);
+            handler.handle(issue);
+          }
+        });
+        writer.commit();
+      } catch (IOException e) {
+        LOG.warn("Unable to write the FxCop issue file: " + issueFile.getAbsolutePath(), e);
+      } finally {
+        writer.close();
+      }
+    }
+
+  }
+
+  /**
+   * The reports are identified by their path, size and last modification time, rather than by their contents which would be read once more.
+   */
+  private static String issueFileKey(List<File> reportFiles, Collection<String> acceptedRuleConfigKeys, int minimumCertainty) {
+    FxCopFingerprint fingerprint = new FxCopFingerprint();
+
+    for (File reportFile : reportFiles) {
+      fingerprint.addStamp(reportFile);
+    }
+    for (String ruleConfigKey : Ordering.natural().sortedCopy(acceptedRuleConfigKeys)) {
+      fingerprint.add(ruleConfigKey);
+    }
+    fingerprint.add("minimumCertainty=" + minimumCertainty);
+
+    return fingerprint.hex();
+  }
+
+  private List<File> importedReportFiles() {
+    ImmutableList.Builder<File> builder = ImmutableList.builder();
+    for (String reportPath : FxCopConfiguration.reportPaths(settings.getString(fxCopConf.reportPathsPropertyKey()))) {
+      builder.add(new File(reportPath));
+    }
+    return builder.build();
+  }
+
+  private List<File> executeFxCop(FxCopRulesetWriter writer, FxCopExecutor executor, RuleKeyIndex ruleKeyIndex, FxCopMetrics metrics) {
+    if (scheduler != null) {
+      scheduler.launch(fxCopConf, parallelism(), new ModuleJob(writer, executor, ruleKeyIndex.enabledRuleConfigKeys()));
+
+      long start = System.nanoTime();
+      List<File> reportFiles = scheduler.await(fxCopConf.repositoryKey(), fileSystem.workingDir());
+      if (reportFiles != null) {
+        metrics.addTime("fxCopCmd", System.nanoTime() - start);
+        return reportFiles;
+      }
+    }
+
+    return executeFxCop(settings, fileSystem.workingDir(), ruleKeyIndex.enabledRuleConfigKeys(), writer, executor, parallelism(), metrics);
+  }
+
+  /**
+   * Runs FxCopCmd.exe for another module on behalf of the scheduler, with the settings and working directory of that module.
+   * The scheduler already bounds the number of concurrent modules, so the assemblies of each module are analyzed one after the other.
+   * The modules are accepted on the same conditions as in shouldExecuteOnProject() and analyse().
+   */
+  private class ModuleJob implements FxCopScheduler.Job {
+
+    private final FxCopRulesetWriter writer;
+    private final FxCopExecutor executor;
+    private final List<String> enabledRuleConfigKeys;
+
+    public ModuleJob(FxCopRulesetWriter writer, FxCopExecutor executor, List<String> enabledRuleConfigKeys) {
+      this.writer = writer;
+      this.executor = executor;
+      this.enabledRuleConfigKeys = enabledRuleConfigKeys;
+    }
+
+    @Override
+    public boolean accepts(ProjectDefinition module, Settings moduleSettings) {
+      return moduleSettings.hasKey(fxCopConf.assemblyPropertyKey())
+        && !fxCopConf.isReportImport(moduleSettings)
+        && shouldExecute(hasFilesToAnalyze(module, moduleSettings, fxCopConf.languageKey()));
+    }
+
+    /**
+     * Each assembly may run twice: once with the adaptive timeout, and once more with the configured one.
+     * An invalid timeout is reported by the sensor of the module, which checks its properties before waiting for the job.
+     */
+    @Override
+    public long timeoutMillis(Settings moduleSettings) {
+      long timeoutMillis;
+      try {
+        timeoutMillis = fxCopConf.timeoutMillis(moduleSettings);
+      } catch (IllegalArgumentException e) {
+        return 0;
+      }
+
+      int assemblies = FxCopConfiguration.assemblyPaths(moduleSettings.getString(fxCopConf.assemblyPropertyKey())).size();
+      return 2 * Math.max(1, assemblies) * timeoutMillis;
+    }
+
+    @Override
+    public List<File> run(Settings moduleSettings, File workingDir) {
+      if (!workingDir.isDirectory() && !workingDir.mkdirs()) {
+        throw new IllegalStateException("Unable to create the working directory: " + workingDir.getAbsolutePath());
+      }
+      return executeFxCop(moduleSettings, workingDir, enabledRuleConfigKeys, writer, executor, 1, new FxCopMetrics());
+    }
+
+  }
+
+  private List<File> executeFxCop(Settings moduleSettings, File workingDir, List<String> enabledRuleConfigKeys, FxCopRulesetWriter writer, FxCopExecutor executor,
+    int parallelism, FxCopMetrics metrics) {
+    File rulesetFile = new File(workingDir, "fxcop-sonarqube.ruleset");
+    long start = System.nanoTime();
+    writer.write(enabledRuleConfigKeys, rulesetFile);
+    metrics.addTime("rulesetWriting", System.nanoTime() - start);
+
+    String executable = fxCopConf.fxCopCmdPath(moduleSettings);
+    List<String> assemblies = FxCopConfiguration.assemblyPaths(moduleSettings.getString(fxCopConf.assemblyPropertyKey()));
+    FxCopTimeout timeout = new FxCopTimeout(
+      fxCopConf.timeoutMillis(moduleSettings),
+      fxCopConf.runHistory(moduleSettings, workingDir),
+      enabledRuleConfigKeys.size(),
+      moduleSettings.getBoolean(fxCopConf.adaptiveTimeoutPropertyKey()));
+    boolean aspnet = moduleSettings.getBoolean(fxCopConf.aspnetPropertyKey());
+    List<String> directories = splitOnCommas(moduleSettings.getString(fxCopConf.directoriesPropertyKey()));
+    List<String> references = splitOnCommas(moduleSettings.getString(fxCopConf.referencesPropertyKey()));
+
+    List<File> reportFiles = reportFiles(workingDir, assemblies.size());
+
+    File fingerprintFile = new File(workingDir, "fxcop-report.fingerprint");
+    String fingerprint = fingerprint(executable, enabledRuleConfigKeys, assemblies, aspnet, directories, references);
+
+    if (isUpToDate(fingerprintFile, fingerprint, reportFiles)) {
+      LOG.info("The FxCop inputs did not change since the previous analysis, reusing its report instead of running FxCopCmd.exe.");
+    } else {
+      deleteQuietly(fingerprintFile);
+
+      // Only the assemblies whose report is not in the cache are analyzed
+      FxCopReportCache cache = fxCopConf.reportCache(moduleSettings);
+      List<String> missingAssemblies = Lists.newArrayList();
+      List<File> missingReportFiles = Lists.newArrayList();
+      List<String> missingCacheKeys = Lists.newArrayList();
+      String sharedCacheKey = cache == null ? null : sharedCacheKey(executable, enabledRuleConfigKeys, aspnet, directories, references);
+      for (int i = 0; i < assemblies.size(); i++) {
+        String cacheKey = cache == null ? null : cacheKey(sharedCacheKey, assemblies.get(i));
+        if (cache == null || !cache.get(cacheKey, reportFiles.get(i))) {
+          missingAssemblies.add(assemblies.get(i));
+          missingReportFiles.add(reportFiles.get(i));
+          missingCacheKeys.add(cacheKey);
+        }
+      }
+      if (cache != null) {
+        int hits = assemblies.size() - missingAssemblies.size();
+        metrics.count("reportCacheHits", hits);
+        LOG.info("Reusing " + hits + " of the " + assemblies.size() + " FxCop report(s) from the cache.");
+      }
+
+      if (!missingAssemblies.isEmpty()) {
+        start = System.nanoTime();
+        if (missingAssemblies.size() == 1) {
+          executor.execute(executable, missingAssemblies.get(0), rulesetFile, missingReportFiles.get(0), timeout, aspnet, directories, references);
+        } else {
+          executor.execute(executable, missingAssemblies, rulesetFile, missingReportFiles, timeout, aspnet, directories, references, parallelism);
+        }
+        metrics.addTime("fxCopCmd", System.nanoTime() - start);
+
+        if (cache != null) {
+          for (int i = 0; i < missingReportFiles.size(); i++) {
+            if (missingReportFiles.get(i).isFile()) {
+              cache.put(missingCacheKeys.get(i), missingReportFiles.get(i));
+            }
+          }
+        }
+      }
+
+      if (allExist(reportFiles)) {
+        writeFingerprint(fingerprintFile, fingerprint);
+      }
+    }
+
+    return reportFiles;
+  }
+
+  private static List<File> reportFiles(File workingDir, int assemblies) {
+    if (assemblies == 1) {
+      return ImmutableList.of(new File(workingDir, "fxcop-report.xml"));
+    }
+
+    ImmutableList.Builder<File> builder = ImmutableList.builder();
+    for (int i = 0; i < assemblies; i++) {
+      builder.add(new File(workingDir, "fxcop-report-" + i + ".xml"));
+    }
+    return builder.build();
+  }
+
+  private static String fingerprint(String executable, List<String> ruleConfigKeys, List<String> assemblies, boolean aspnet, List<String> directories,
+    List<String> references) {
+    FxCopFingerprint fingerprint = new FxCopFingerprint();
+
+    fingerprint.addStamp(new File(executable));
+    for (String ruleConfigKey : Ordering.natural().sortedCopy(ruleConfigKeys)) {
+      fingerprint.add(ruleConfigKey);
+    }
+    fingerprint.add("aspnet=" + aspnet);
+    for (String assembly : assemblies) {
+      fingerprint.addContents(new File(assembly));
+      fingerprint.addContents(new File(FxCopConfiguration.pdbPath(assembly)));
+    }
+    for (String directory : directories) {
+      fingerprint.add("directory=" + directory);
+    }
+    for (String reference : references) {
+      fingerprint.addStamp(new File(reference));
+    }
+
+    return fingerprint.hex();
+  }
+
+  /**
+   * Digest of the inputs shared by all the assemblies of the module, which is only computed once and then combined with each assembly.
+   * Unlike the fingerprint, the cache key does not depend on where the files are, so that it matches across workspaces.
+   */
+  private static String sharedCacheKey(String executable, List<String> ruleConfigKeys, boolean aspnet, List<String> directories, List<String> references) {
+    FxCopFingerprint fingerprint = new FxCopFingerprint();
+
+    fingerprint.addContentsOnly(new File(executable));
+    for (String ruleConfigKey : Ordering.natural().sortedCopy(ruleConfigKeys)) {
+      fingerprint.add(ruleConfigKey);
+    }
+    fingerprint.add("aspnet=" + aspnet);
+    for (String directory : directories) {
+      fingerprint.add("directory=" + directory);
+    }
+    for (String reference : references) {
+      fingerprint.addContentsOnly(new File(reference));
+    }
+
+    return fingerprint.hex();
+  }
+
+  /**
+   * The .pdb file, which contains the paths of the source files, ensures that the cached report points to the same source files.
+   */
+  private static String cacheKey(String sharedCacheKey, String assembly) {
+    return new FxCopFingerprint()
+      .add(sharedCacheKey)
+      .addContentsOnly(new File(assembly))
+      .addContentsOnly(new File(FxCopConfiguration.pdbPath(assembly)))
+      .hex();
+  }
+
+  private static boolean isUpToDate(File fingerprintFile, String fingerprint, List<File> reportFiles) {
+    if (!fingerprintFile.isFile() || !allExist(reportFiles)) {
+      return false;
+    }
+
+    try {
+      return fingerprint.equals(Files.toString(fingerprintFile, Charsets.UTF_8).trim());
+    } catch (IOException e) {
+      LOG.warn("Unable to read the FxCop fingerprint file: " + fingerprintFile.getAbsolutePath(), e);
+      return false;
+    }
+  }
+
+  private static void writeFingerprint(File fingerprintFile, String fingerprint) {
+    try {
+      Files.write(fingerprint, fingerprintFile, Charsets.UTF_8);
+    } catch (IOException e) {
+      LOG.warn("Unable to write the FxCop fingerprint file: " + fingerprintFile.getAbsolutePath(), e);
+    }
+  }
+
+  private static boolean allExist(List<File> files) {
+    for (File file : files) {
+      if (!file.isFile()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void deleteQuietly(File file) {
+    if (file.exists() && !file.delete()) {
+      LOG.warn("Unable to delete the file: " + file.getAbsolutePath());
+    }
+  }
+
+  private int parallelism() {
+    int parallelism = settings.getInt(fxCopConf.parallelismPropertyKey());
+    return parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * Groups the issues by file as they are parsed, and submits them file after file, in line order.
+   * At most MAX_BUFFERED_ISSUES issues are held at once: the groups are submitted whenever that many are buffered, and once all the reports are read.
+   */
+  private class IssueImporter implements FxCopIssueHandler {
 
-    File reportFile = new File(fileSystem.workingDir(), "fxcop-report.xml");
+    private final FileProvider fileProvider;
+    private final RuleKeyIndex ruleKeyIndex;
+    private final Table<String, String, ResolvedFile> resolvedFiles = HashBasedTable.create();
+    private final List<ResolvedFile> filesWithIssues = Lists.newArrayList();
+    private int parsed;
+    private int withoutFile;
+    private int outsideOfSonarQube;
+    private int otherLanguage;
+    private int duplicates;
+    private int submitted;
+    private int buffered;
+    private long resolutionNanos;
+    private long submissionNanos;
 
-    executor.execute(settings.getString(fxCopConf.fxCopCmdPropertyKey()), settings.getString(fxCopConf.assemblyPropertyKey()),
-      rulesetFile, reportFile, settings.getInt(fxCopConf.timeoutPropertyKey()), settings.getBoolean(fxCopConf.aspnetPropertyKey()),
-      splitOnCommas(settings.getString(fxCopConf.directoriesPropertyKey())), splitOnCommas(settings.getString(fxCopConf.referencesPropertyKey())));
+    public IssueImporter(FileProvider fileProvider, RuleKeyIndex ruleKeyIndex) {
+      this.fileProvider = fileProvider;
+      this.ruleKeyIndex = ruleKeyIndex;
+    }
 
-    for (FxCopIssue issue : parser.parse(reportFile)) {
+    @Override
+    public void handle(FxCopIssue issue) {
+      parsed++;
       if (!hasFileAndLine(issue)) {
+        withoutFile++;
         logSkippedIssue(issue, "which has no associated file.");
-        continue;
+        return;
       }
 
-      File file = new File(new File(issue.path()), issue.file());
-      org.sonar.api.resources.File sonarFile = fileProvider.fromIOFile(file);
-      if (sonarFile == null) {
-        logSkippedIssueOutsideOfSonarQube(issue, file);
-      } else if (fxCopConf.languageKey().equals(sonarFile.getLanguage().getKey())) {
-        Issuable issuable = perspectives.as(Issuable.class, sonarFile);
+      ResolvedFile resolvedFile = resolve(issue.path(), issue.file());
+      if (resolvedFile.sonarFile == null) {
+        outsideOfSonarQube++;
+        logSkippedIssueOutsideOfSonarQube(issue, resolvedFile.file);
+      } else if (!resolvedFile.hasLanguage) {
+        otherLanguage++;
+      } else {
+        Issuable issuable = resolvedFile.issuable;
         if (issuable == null) {
-          logSkippedIssueOutsideOfSonarQube(issue, file);
+          outsideOfSonarQube++;
+          logSkippedIssueOutsideOfSonarQube(issue, resolvedFile.file);
         } else {
+          if (!resolvedFile.fingerprints.add(fingerprint(issue))) {
+            duplicates++;
+            logSkippedIssue(issue, "which is a duplicate of a previous one.");
+          } else {
+            if (resolvedFile.issues.isEmpty()) {
+              filesWithIssues.add(resolvedFile);
+            }
+            resolvedFile.issues.add(issue);
+            buffered++;
+            if (buffered >= MAX_BUFFERED_ISSUES) {
+              flush();
+            }
+          }
+        }
+      }
+    }
+
+    public void submit() {
+      flush();
+
+      if (duplicates > 0) {
+        LOG.info("Dropped " + duplicates + " duplicated FxCop issue(s).");
+      }
+    }
+
+    private void flush() {
+      long start = System.nanoTime();
+      for (ResolvedFile resolvedFile : filesWithIssues) {
+        Issuable issuable = resolvedFile.issuable;
+        for (FxCopIssue issue : LINE_ORDERING.sortedCopy(resolvedFile.issues)) {
           issuable.addIssue(
             issuable.newIssueBuilder()
-              .ruleKey(RuleKey.of(fxCopConf.repositoryKey(), ruleKey(issue.ruleConfigKey())))
+              .ruleKey(RuleKey.of(fxCopConf.repositoryKey(), ruleKeyIndex.ruleKey(issue.ruleConfigKey())))
               .line(issue.line())
               .message(issue.message())
               .build());
+          submitted++;
         }
+        resolvedFile.issues.clear();
       }
+      filesWithIssues.clear();
+      buffered = 0;
+      submissionNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * Time spent resolving the (Path, File) pairs to SonarQube files, which only happens once per pair.
+     */
+    public long resolutionNanos() {
+      return resolutionNanos;
+    }
+
+    public long submissionNanos() {
+      return submissionNanos;
     }
+
+    public void countInto(FxCopMetrics metrics) {
+      metrics.count("issuesParsed", parsed);
+      metrics.count("issuesSubmitted", submitted);
+      metrics.count("skippedWithoutFile", withoutFile);
+      metrics.count("skippedOutsideOfSonarQube", outsideOfSonarQube);
+      metrics.count("skippedOtherLanguage", otherLanguage);
+      metrics.count("duplicates", duplicates);
+    }
+
+    private ResolvedFile resolve(String path, String fileAttribute) {
+      ResolvedFile resolvedFile = resolvedFiles.get(path, fileAttribute);
+      if (resolvedFile == null) {
+        long start = System.nanoTime();
+        File file = new File(new File(path), fileAttribute);
+        org.sonar.api.resources.File sonarFile = fileProvider.fromIOFile(file);
+        boolean hasLanguage = sonarFile != null && fxCopConf.languageKey().equals(sonarFile.getLanguage().getKey());
+        Issuable issuable = hasLanguage ? perspectives.as(Issuable.class, sonarFile) : null;
+
+        resolvedFile = new ResolvedFile(file, sonarFile, hasLanguage, issuable);
+        resolvedFiles.put(path, fileAttribute, resolvedFile);
+        resolutionNanos += System.nanoTime() - start;
+      }
+
+      return resolvedFile;
+    }
+
+  }
+
+  /**
+   * Outcome of the resolution of a (Path, File) pair, including the negative ones.
+   */
+  private static class ResolvedFile {
+
+    private final File file;
+    private final org.sonar.api.resources.File sonarFile;
+    private final boolean hasLanguage;
+    private final Issuable issuable;
+    private final List<FxCopIssue> issues = Lists.newArrayList();
+    private final Set<Long> fingerprints = Sets.newHashSet();
+
+    public ResolvedFile(File file, @Nullable org.sonar.api.resources.File sonarFile, boolean hasLanguage, @Nullable Issuable issuable) {
+      this.file = file;
+      this.sonarFile = sonarFile;
+      this.hasLanguage = hasLanguage;
+      this.issuable = issuable;
+    }
+
   }
 
   private static List<String> splitOnCommas(@Nullable String property) {
@@ -133,42 +724,103 @@ public class FxCopSensor implements Sensor {
     }
   }
 
+  /**
+   * 64-bit FNV-1a hash of the CheckId, line and message of the issue: the file is given by the ResolvedFile holding the fingerprints.
+   * Only the hash is retained for the duplicates detection, not the strings.
+   */
+  private static long fingerprint(FxCopIssue issue) {
+    long hash = FNV_OFFSET_BASIS;
+    hash = fingerprint(hash, issue.ruleConfigKey());
+    hash = (hash ^ issue.lineOrNoLine()) * FNV_PRIME;
+    return fingerprint(hash, issue.message());
+  }
+
+  private static long fingerprint(long hash, String value) {
+    long result = hash;
+    for (int i = 0; i < value.length(); i++) {
+      result = (result ^ value.charAt(i)) * FNV_PRIME;
+    }
+    return (result ^ 0xFFFF) * FNV_PRIME;
+  }
+
   private static boolean hasFileAndLine(FxCopIssue issue) {
-    return issue.path() != null && issue.file() != null && issue.line() != null;
+    return issue.path() != null && issue.file() != null && issue.hasLine();
   }
 
   private static void logSkippedIssueOutsideOfSonarQube(FxCopIssue issue, File file) {
-    logSkippedIssue(issue, "whose file \"" + file.getAbsolutePath() + "\" is not in SonarQube.");
+    if (LOG.isDebugEnabled()) {
+      logSkippedIssue(issue, "whose file \"" + file.getAbsolutePath() + "\" is not in SonarQube.");
+    }
   }
 
   private static void logSkippedIssue(FxCopIssue issue, String reason) {
-    LOG.debug("Skipping the FxCop issue at line " + issue.reportLine() + " " + reason);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Skipping the FxCop issue at line " + issue.reportLine() + " " + reason);
+    }
   }
 
-  private List<String> enabledRuleConfigKeys() {
-    ImmutableList.Builder<String> builder = ImmutableList.builder();
-    for (ActiveRule activeRule : profile.getActiveRulesByRepository(fxCopConf.repositoryKey())) {
-      if (!CUSTOM_RULE_KEY.equals(activeRule.getRuleKey())) {
-        String effectiveConfigKey = activeRule.getConfigKey();
-        if (effectiveConfigKey == null) {
-          effectiveConfigKey = activeRule.getParameter(CUSTOM_RULE_CHECK_ID_PARAMETER);
+  /**
+   * Maps the CheckId reported by FxCop to the key of the active rule, computed once per analysis.
+   */
+  private class RuleKeyIndex {
+
+    private final List<String> enabledRuleConfigKeys;
+    private final Map<String, String> ruleKeys = Maps.newHashMap();
+
+    public RuleKeyIndex(List<ActiveRule> activeRules) {
+      Set<String> configKeys = Sets.newLinkedHashSet();
+      for (ActiveRule activeRule : activeRules) {
+        if (!CUSTOM_RULE_KEY.equals(activeRule.getRuleKey())) {
+          String configKey = activeRule.getConfigKey();
+          String checkId = activeRule.getParameter(CUSTOM_RULE_CHECK_ID_PARAMETER);
+
+          index(configKey, activeRule.getRuleKey());
+          index(checkId, activeRule.getRuleKey());
+
+          String effectiveConfigKey = configKey == null ? checkId : configKey;
+          if (effectiveConfigKey != null) {
+            configKeys.add(effectiveConfigKey);
+          }
         }
+      }
+      this.enabledRuleConfigKeys = ImmutableList.copyOf(configKeys);
+    }
 
-        builder.add(effectiveConfigKey);
+    private void index(@Nullable String ruleConfigKey, String ruleKey) {
+      if (ruleConfigKey == null) {
+        return;
+      }
+
+      String previousRuleKey = ruleKeys.get(ruleConfigKey);
+      if (previousRuleKey == null) {
+        ruleKeys.put(ruleConfigKey, ruleKey);
+      } else if (!previousRuleKey.equals(ruleKey)) {
+        LOG.warn("The FxCop rule config key \"" + ruleConfigKey + "\" is used by both the rules \"" + previousRuleKey + "\" and \"" + ruleKey + "\" in repository \""
+          + fxCopConf.repositoryKey() + "\", its issues will be reported on \"" + previousRuleKey + "\".");
       }
     }
-    return builder.build();
-  }
 
-  private String ruleKey(String ruleConfigKey) {
-    for (ActiveRule activeRule : profile.getActiveRulesByRepository(fxCopConf.repositoryKey())) {
-      if (ruleConfigKey.equals(activeRule.getConfigKey()) || ruleConfigKey.equals(activeRule.getParameter(CUSTOM_RULE_CHECK_ID_PARAMETER))) {
-        return activeRule.getRuleKey();
+    public List<String> enabledRuleConfigKeys() {
+      return enabledRuleConfigKeys;
+    }
+
+    /**
+     * Config keys and CheckId parameters of all the active rules.
+     */
+    public Set<String> ruleConfigKeys() {
+      return ruleKeys.keySet();
+    }
+
+    public String ruleKey(String ruleConfigKey) {
+      String ruleKey = ruleKeys.get(ruleConfigKey);
+      if (ruleKey == null) {
+        throw new IllegalStateException(
+          "Unable to find the rule key corresponding to the rule config key \"" + ruleConfigKey + "\" in repository \"" + fxCopConf.repositoryKey() + "\".");
       }
+
+      return ruleKey;
     }
 
-    throw new IllegalStateException(
-      "Unable to find the rule key corresponding to the rule config key \"" + ruleConfigKey + "\" in repository \"" + fxCopConf.repositoryKey() + "\".");
   }
 
 }
@@ -0,0 +1,113 @@
+/*
+ * SonarQube FxCop Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.fxcop;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timeout of the FxCopCmd processes of a module, which records their durations into the run history when there is one.
+ * In adaptive mode, the timeout is derived from the recorded durations: their 99th percentile, plus a safety margin.
+ * The configured timeout remains an upper bound, and is used as is until enough runs are recorded.
+ */
+public class FxCopTimeout {
+
+  private static final Logger LOG = LoggerFactory.getLogger(FxCopTimeout.class);
+  private static final int MINIMUM_RUNS = 5;
+  private static final double PERCENTILE = 0.99;
+  private static final double MARGIN_FACTOR = 1.5;
+  private static final long MINIMUM_MARGIN_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+  private final long configuredMillis;
+  private final FxCopRunHistory history;
+  private final int ruleCount;
+  private final boolean adaptive;
+
+  public FxCopTimeout(long configuredMillis, @Nullable FxCopRunHistory history, int ruleCount, boolean adaptive) {
+    this.configuredMillis = configuredMillis;
+    this.history = history;
+    this.ruleCount = ruleCount;
+    this.adaptive = adaptive;
+  }
+
+  public static FxCopTimeout fixed(long millis) {
+    return new FxCopTimeout(millis, null, 0, false);
+  }
+
+  public long configuredMillis() {
+    return configuredMillis;
+  }
+
+  public boolean isAdaptive() {
+    return adaptive;
+  }
+
+  /**
+   * Timeout of the FxCopCmd process analyzing the given assembly.
+   */
+  public long millisFor(String assembly) {
+    if (!adaptive || history == null) {
+      return configuredMillis;
+    }
+
+    List<FxCopRunHistory.Run> runs = history.runs();
+    if (runs.size() < MINIMUM_RUNS) {
+      LOG.info("Only " + runs.size() + " FxCopCmd.exe run(s) recorded, using the configured timeout of " + configuredMillis + " ms.");
+      return configuredMillis;
+    }
+
+    long millis = Math.min(configuredMillis, adaptiveMillis(runs, new File(assembly).length(), ruleCount));
+    LOG.info("Using an adaptive FxCopCmd.exe timeout of " + millis + " ms, derived from " + runs.size() + " recorded runs.");
+    return millis;
+  }
+
+  public void record(String assembly, long durationMillis) {
+    if (history != null) {
+      history.record(new FxCopRunHistory.Run(durationMillis, new File(assembly).length(), ruleCount));
+    }
+  }
+
+  /**
+   * Each recorded duration is first scaled up by how much larger the assembly and the number of rules now are, never down.
+   */
+  static long adaptiveMillis(List<FxCopRunHistory.Run> runs, long assemblyBytes, int ruleCount) {
+    double[] durations = new double[runs.size()];
+    for (int i = 0; i < durations.length; i++) {
+      FxCopRunHistory.Run run = runs.get(i);
+      durations[i] = run.durationMillis() * growth(assemblyBytes, run.assemblyBytes()) * growth(ruleCount, run.ruleCount());
+    }
+    Arrays.sort(durations);
+
+    double percentile = durations[(int) Math.ceil(PERCENTILE * durations.length) - 1];
+    return (long) Math.ceil(Math.max(percentile * MARGIN_FACTOR, percentile + MINIMUM_MARGIN_MILLIS));
+  }
+
+  private static double growth(long current, long recorded) {
+    return recorded <= 0 ? 1 : Math.max(1, (double) current / recorded);
+  }
+
+}
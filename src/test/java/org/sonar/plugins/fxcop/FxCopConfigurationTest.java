@@ -47,6 +47,17 @@ public class FxCopConfigurationTest {
     assertThat(fxCopConf.aspnetPropertyKey()).isEqualTo("fooAspnetKey");
     assertThat(fxCopConf.directoriesPropertyKey()).isEqualTo("fooDirectoriesKey");
     assertThat(fxCopConf.referencesPropertyKey()).isEqualTo("fooReferencesKey");
+    assertThat(fxCopConf.reportPathsPropertyKey()).isEqualTo("sonar.cs.fxcop.reportPaths");
+    assertThat(fxCopConf.parallelismPropertyKey()).isEqualTo("sonar.cs.fxcop.parallelism");
+    assertThat(fxCopConf.minimumCertaintyPropertyKey()).isEqualTo("sonar.cs.fxcop.minimumCertainty");
+    assertThat(fxCopConf.pipelinedPropertyKey()).isEqualTo("sonar.cs.fxcop.pipelined");
+    assertThat(fxCopConf.hostSlotsPropertyKey()).isEqualTo("sonar.cs.fxcop.hostSlots");
+    assertThat(fxCopConf.hostSlotsDirectoryPropertyKey()).isEqualTo("sonar.cs.fxcop.hostSlotsDirectory");
+    assertThat(fxCopConf.adaptiveTimeoutPropertyKey()).isEqualTo("sonar.cs.fxcop.adaptiveTimeout");
+    assertThat(fxCopConf.reportCacheDirectoryPropertyKey()).isEqualTo("sonar.cs.fxcop.reportCacheDirectory");
+    assertThat(fxCopConf.reportCacheMaxSizePropertyKey()).isEqualTo("sonar.cs.fxcop.reportCacheMaxSizeMb");
+    assertThat(fxCopConf.issueFilePropertyKey()).isEqualTo("sonar.cs.fxcop.issueFile");
+    assertThat(fxCopConf.runHistoryDirectoryPropertyKey()).isEqualTo("sonar.cs.fxcop.runHistoryDirectory");
 
     fxCopConf = new FxCopConfiguration("vbnet", "vbnet-fxcop", "barAssemblyKey", "barFxCopCmdPathKey", "barTimeoutKey", "barAspnetKey", "barDirectoriesKey", "barReferencesKey");
     assertThat(fxCopConf.languageKey()).isEqualTo("vbnet");
@@ -57,6 +68,75 @@ public class FxCopConfigurationTest {
     assertThat(fxCopConf.aspnetPropertyKey()).isEqualTo("barAspnetKey");
     assertThat(fxCopConf.directoriesPropertyKey()).isEqualTo("barDirectoriesKey");
     assertThat(fxCopConf.referencesPropertyKey()).isEqualTo("barReferencesKey");
+    assertThat(fxCopConf.reportPathsPropertyKey()).isEqualTo("sonar.vbnet.fxcop.reportPaths");
+  }
+
+  @Test
+  public void timeout_millis() {
+    FxCopConfiguration fxCopConf = new FxCopConfiguration("", "", "", "", "fooTimeoutKey", "", "", "");
+    Settings settings = new Settings();
+    assertThat(fxCopConf.timeoutMillis(settings)).isEqualTo(0);
+
+    settings.setProperty("fooTimeoutKey", "10");
+    assertThat(fxCopConf.timeoutMillis(settings)).isEqualTo(600000);
+    settings.setProperty("fooTimeoutKey", "1.5");
+    assertThat(fxCopConf.timeoutMillis(settings)).isEqualTo(90000);
+    settings.setProperty("fooTimeoutKey", "90s");
+    assertThat(fxCopConf.timeoutMillis(settings)).isEqualTo(90000);
+    settings.setProperty("fooTimeoutKey", " 2 m ");
+    assertThat(fxCopConf.timeoutMillis(settings)).isEqualTo(120000);
+    settings.setProperty("fooTimeoutKey", "500ms");
+    assertThat(fxCopConf.timeoutMillis(settings)).isEqualTo(500);
+    settings.setProperty("fooTimeoutKey", "1h");
+    assertThat(fxCopConf.timeoutMillis(settings)).isEqualTo(3600000);
+  }
+
+  @Test
+  public void check_properties_invalid_timeout() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("The property \"fooTimeoutKey\" must be a duration");
+
+    Settings settings = new Settings();
+    settings.setProperty("fooAssemblyKey", "src/test/resources/FxCopConfigurationTest/MyLibrary.dll");
+    settings.setProperty("fooFxCopCmdPathKey", "src/test/resources/FxCopConfigurationTest/FxCopCmd.exe");
+    settings.setProperty("fooTimeoutKey", "ten minutes");
+
+    new FxCopConfiguration("", "", "fooAssemblyKey", "fooFxCopCmdPathKey", "fooTimeoutKey", "", "", "").checkProperties(settings);
+  }
+
+  @Test
+  public void report_cache() {
+    FxCopConfiguration fxCopConf = new FxCopConfiguration("", "", "", "", "", "", "", "");
+    Settings settings = new Settings();
+    assertThat(fxCopConf.reportCache(settings)).isNull();
+
+    settings.setProperty(fxCopConf.reportCacheDirectoryPropertyKey(), "target/FxCopConfigurationTest/cache");
+    assertThat(fxCopConf.reportCache(settings)).isNotNull();
+    settings.setProperty(fxCopConf.reportCacheMaxSizePropertyKey(), "10");
+    assertThat(fxCopConf.reportCache(settings)).isNotNull();
+  }
+
+  @Test
+  public void process_slots() {
+    FxCopConfiguration fxCopConf = new FxCopConfiguration("", "", "", "", "", "", "", "");
+    Settings settings = new Settings();
+    assertThat(fxCopConf.processSlots(settings)).isNull();
+
+    settings.setProperty(fxCopConf.hostSlotsPropertyKey(), "2");
+    assertThat(fxCopConf.processSlots(settings)).isNotNull();
+  }
+
+  @Test
+  public void run_history() {
+    FxCopConfiguration fxCopConf = new FxCopConfiguration("cs", "", "", "", "", "", "", "");
+    Settings settings = new Settings();
+    File workingDir = new File("target/FxCopConfigurationTest/working-dir");
+    assertThat(fxCopConf.runHistory(settings, workingDir).file()).isEqualTo(new File(workingDir, "fxcop-history.tsv"));
+
+    settings.setProperty("sonar.cs.fxcop.runHistoryDirectory", "target/FxCopConfigurationTest/history");
+    assertThat(fxCopConf.runHistory(settings, workingDir).file()).isEqualTo(new File("target/FxCopConfigurationTest/history", "fxcop-history.tsv"));
+    settings.setProperty("sonar.projectKey", "org.foo:bar");
+    assertThat(fxCopConf.runHistory(settings, workingDir).file()).isEqualTo(new File("target/FxCopConfigurationTest/history", "fxcop-history-org.foo_bar.tsv"));
   }
 
   @Test
@@ -81,6 +161,79 @@ public class FxCopConfigurationTest {
     new FxCopConfiguration("", "", "fooAssemblyKey", "fooFxCopCmdPathKey", "", "", "", "").checkProperties(settings);
   }
 
+  @Test
+  public void check_properties_multiple_assemblies() {
+    Settings settings = new Settings();
+    settings.setProperty("fooAssemblyKey", "src/test/resources/FxCopConfigurationTest/MyLibrary.dll, src/test/resources/FxCopConfigurationTest/MyLibrary");
+    settings.setProperty("fooFxCopCmdPathKey", new File("src/test/resources/FxCopConfigurationTest/FxCopCmd.exe").getAbsolutePath());
+
+    new FxCopConfiguration("", "", "fooAssemblyKey", "fooFxCopCmdPathKey", "", "", "", "").checkProperties(settings);
+  }
+
+  @Test
+  public void check_properties_assembly_wildcard_without_match() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("No assembly matches \"src/test/resources/FxCopConfigurationTest/*.exe.dll\" provided by the property \"fooAssemblyKey\".");
+
+    Settings settings = new Settings();
+    settings.setProperty("fooAssemblyKey", "src/test/resources/FxCopConfigurationTest/*.exe.dll");
+
+    new FxCopConfiguration("", "", "fooAssemblyKey", "", "", "", "", "").checkProperties(settings);
+  }
+
+  @Test
+  public void assembly_paths() {
+    assertThat(FxCopConfiguration.assemblyPaths(null)).isEmpty();
+    assertThat(FxCopConfiguration.assemblyPaths("MyLibrary.dll")).containsExactly("MyLibrary.dll");
+    assertThat(FxCopConfiguration.assemblyPaths(" a.dll,, b.dll ")).containsExactly("a.dll", "b.dll");
+    assertThat(FxCopConfiguration.assemblyPaths("src/test/resources/FxCopConfigurationTest/My*.dll")).containsExactly(
+      new File("src/test/resources/FxCopConfigurationTest/MyLibrary.dll").getAbsolutePath(),
+      new File("src/test/resources/FxCopConfigurationTest/MyLibraryWithoutPdb.dll").getAbsolutePath());
+    assertThat(FxCopConfiguration.assemblyPaths("src/test/resources/FxCopConfigurationTest/MyLibrary.???")).containsExactly(
+      new File("src/test/resources/FxCopConfigurationTest/MyLibrary.dll").getAbsolutePath(),
+      new File("src/test/resources/FxCopConfigurationTest/MyLibrary.pdb").getAbsolutePath());
+    assertThat(FxCopConfiguration.assemblyPaths("non_existing/*.dll")).isEmpty();
+  }
+
+  @Test
+  public void check_properties_report_import() {
+    Settings settings = new Settings();
+    settings.setProperty("sonar.cs.fxcop.reportPaths", "src/test/resources/FxCopConfigurationTest/*.CodeAnalysisLog.xml");
+
+    FxCopConfiguration fxCopConf = new FxCopConfiguration("cs", "", "fooAssemblyKey", "fooFxCopCmdPathKey", "", "", "", "");
+    assertThat(fxCopConf.reportPathsPropertyKey()).isEqualTo("sonar.cs.fxcop.reportPaths");
+    assertThat(fxCopConf.isReportImport(settings)).isTrue();
+    assertThat(fxCopConf.isReportImport(new Settings())).isFalse();
+    assertThat(new FxCopConfiguration("vbnet", "", "", "", "", "", "", "").isReportImport(settings)).isFalse();
+    fxCopConf.checkProperties(settings);
+
+    assertThat(FxCopConfiguration.reportPaths(settings.getString("sonar.cs.fxcop.reportPaths"))).containsExactly(
+      new File("src/test/resources/FxCopConfigurationTest/MyLibrary.CodeAnalysisLog.xml").getAbsolutePath());
+  }
+
+  @Test
+  public void check_properties_report_import_without_match() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("No FxCop report matches \"src/test/resources/FxCopConfigurationTest/*.missing.xml\" provided by the property \"sonar.cs.fxcop.reportPaths\".");
+
+    Settings settings = new Settings();
+    settings.setProperty("sonar.cs.fxcop.reportPaths", "src/test/resources/FxCopConfigurationTest/*.missing.xml");
+
+    new FxCopConfiguration("cs", "", "fooAssemblyKey", "", "", "", "", "").checkProperties(settings);
+  }
+
+  @Test
+  public void check_properties_report_import_not_found() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Cannot find the FxCop report");
+    thrown.expectMessage(new File("src/test/resources/FxCopConfigurationTest/NotFound.CodeAnalysisLog.xml").getAbsolutePath());
+
+    Settings settings = new Settings();
+    settings.setProperty("sonar.cs.fxcop.reportPaths", "src/test/resources/FxCopConfigurationTest/NotFound.CodeAnalysisLog.xml");
+
+    new FxCopConfiguration("cs", "", "fooAssemblyKey", "", "", "", "", "").checkProperties(settings);
+  }
+
   @Test
   public void check_properties_assembly_property_not_set() {
     thrown.expect(IllegalArgumentException.class);
@@ -131,7 +284,30 @@ public class FxCopConfigurationTest {
     FxCopConfiguration fxCopConf = new FxCopConfiguration("", "", "fooAssemblyKey", "fooFxCopCmdPathKey", "", "", "", "");
     fxCopConf.checkProperties(settings);
 
-    assertThat(settings.getString(fxCopConf.fxCopCmdPropertyKey())).isEqualTo(new File("src/test/resources/FxCopConfigurationTest/FxCopCmd.exe").getAbsolutePath());
+    assertThat(fxCopConf.fxCopCmdPath(settings)).isEqualTo(new File("src/test/resources/FxCopConfigurationTest/FxCopCmd.exe").getAbsolutePath());
+    assertThat(fxCopConf.fxCopCmdPropertyKey(settings)).isEqualTo("sonar.fxcop.installDirectory");
+    assertThat(fxCopConf.fxCopCmdPropertyKey()).isEqualTo("fooFxCopCmdPathKey");
+  }
+
+  @Test
+  public void deprecated_properties_are_resolved_for_each_module() {
+    FxCopConfiguration fxCopConf = new FxCopConfiguration("", "", "fooAssemblyKey", "fooFxCopCmdPathKey", "fooTimeoutKey", "", "", "");
+
+    Settings deprecatedSettings = new Settings();
+    deprecatedSettings.setProperty("sonar.fxcop.installDirectory", "Deprecated/FxCopCmd.exe");
+    deprecatedSettings.setProperty("sonar.fxcop.timeoutMinutes", "42");
+    Settings settings = new Settings();
+    settings.setProperty("fooFxCopCmdPathKey", "FxCopCmd.exe");
+    settings.setProperty("sonar.fxcop.installDirectory", "Deprecated/FxCopCmd.exe");
+    settings.setProperty("fooTimeoutKey", "90s");
+
+    // The module using the deprecated properties must not affect the other ones, whether or not its properties were checked first
+    assertThat(fxCopConf.fxCopCmdPath(deprecatedSettings)).isEqualTo("Deprecated/FxCopCmd.exe");
+    assertThat(fxCopConf.fxCopCmdPath(settings)).isEqualTo("FxCopCmd.exe");
+    assertThat(fxCopConf.fxCopCmdPath(new Settings())).isNull();
+    assertThat(fxCopConf.timeoutMillis(deprecatedSettings)).isEqualTo(42 * 60 * 1000);
+    assertThat(fxCopConf.timeoutMillis(settings)).isEqualTo(90 * 1000);
+    assertThat(fxCopConf.timeoutMillis(new Settings())).isEqualTo(0);
   }
 
   @Test
@@ -158,7 +334,9 @@ public class FxCopConfigurationTest {
     FxCopConfiguration fxCopConf = new FxCopConfiguration("", "", "fooAssemblyKey", "fooFxCopCmdPathKey", "fooTimeoutKey", "", "", "");
     fxCopConf.checkProperties(settings);
 
-    assertThat(settings.getString(fxCopConf.timeoutPropertyKey())).isEqualTo("42");
+    assertThat(settings.getString(fxCopConf.timeoutPropertyKey(settings))).isEqualTo("42");
+    assertThat(fxCopConf.timeoutMillis(settings)).isEqualTo(42 * 60 * 1000);
+    assertThat(fxCopConf.timeoutPropertyKey()).isEqualTo("fooTimeoutKey");
   }
 
 }
@@ -0,0 +1,166 @@
+/*
+ * SonarQube FxCop Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.fxcop;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import org.apache.commons.lang.SystemUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+import org.sonar.api.utils.command.CommandException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FxCopExecutorTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  @Before
+  public void stubs_require_a_unix_shell() {
+    assumeTrue(!SystemUtils.IS_OS_WINDOWS);
+  }
+
+  @Test
+  public void execute_in_parallel() throws Exception {
+    File fxCopCmd = stubFxCopCmd(0);
+    File ruleset = tmp.newFile("fxcop-sonarqube.ruleset");
+    File report0 = new File(tmp.getRoot(), "fxcop-report-0.xml");
+    File report1 = new File(tmp.getRoot(), "fxcop-report-1.xml");
+    File report2 = new File(tmp.getRoot(), "fxcop-report-2.xml");
+
+    new FxCopExecutor().execute(fxCopCmd.getAbsolutePath(), ImmutableList.of("A.dll", "B.dll", "C.dll"), ruleset, ImmutableList.of(report0, report1, report2), FxCopTimeout.fixed(TimeUnit.MINUTES.toMillis(1)), false,
+      ImmutableList.<String>of(), ImmutableList.<String>of(), 2);
+
+    assertThat(Files.toString(report0, Charsets.UTF_8)).contains("A.dll");
+    assertThat(Files.toString(report1, Charsets.UTF_8)).contains("B.dll");
+    assertThat(Files.toString(report2, Charsets.UTF_8)).contains("C.dll");
+  }
+
+  @Test
+  public void execute_in_parallel_with_a_single_slot() throws Exception {
+    File fxCopCmd = stubFxCopCmd(0);
+    File ruleset = tmp.newFile("fxcop-sonarqube.ruleset");
+    File report0 = new File(tmp.getRoot(), "fxcop-report-0.xml");
+    File report1 = new File(tmp.getRoot(), "fxcop-report-1.xml");
+    File slots = new File(tmp.getRoot(), "slots");
+
+    new FxCopExecutor(new FxCopProcessSlots(slots, 1)).execute(fxCopCmd.getAbsolutePath(), ImmutableList.of("A.dll", "B.dll"), ruleset,
+      ImmutableList.of(report0, report1), FxCopTimeout.fixed(TimeUnit.MINUTES.toMillis(1)), false, ImmutableList.<String>of(), ImmutableList.<String>of(), 2);
+
+    assertThat(Files.toString(report0, Charsets.UTF_8)).contains("A.dll");
+    assertThat(Files.toString(report1, Charsets.UTF_8)).contains("B.dll");
+    assertThat(new File(slots, "fxcop-slot-0.lock").length()).isEqualTo(0);
+  }
+
+  @Test
+  public void execute_in_parallel_failure() throws Exception {
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("returned 1 as exit code");
+
+    File fxCopCmd = stubFxCopCmd(1);
+    File ruleset = tmp.newFile("fxcop-sonarqube.ruleset");
+
+    new FxCopExecutor().execute(fxCopCmd.getAbsolutePath(), ImmutableList.of("A.dll", "B.dll"), ruleset,
+      ImmutableList.of(new File(tmp.getRoot(), "fxcop-report-0.xml"), new File(tmp.getRoot(), "fxcop-report-1.xml")), FxCopTimeout.fixed(TimeUnit.MINUTES.toMillis(1)), false,
+      ImmutableList.<String>of(), ImmutableList.<String>of(), 4);
+  }
+
+  @Test
+  public void retry_with_configured_timeout_after_adaptive_timeout() throws Exception {
+    File fxCopCmd = tmp.newFile("FxCopCmd.exe");
+    File firstRun = new File(tmp.getRoot(), "first-run");
+    // The first run exceeds the timeout, the second one writes its report
+    Files.write(
+      "#!/bin/sh\n"
+        + "if [ ! -f \"" + firstRun.getAbsolutePath() + "\" ]; then\n"
+        + "  touch \"" + firstRun.getAbsolutePath() + "\"\n"
+        + "  exec sleep 10\n"
+        + "fi\n"
+        + "for arg in \"$@\"; do\n"
+        + "  case \"$arg\" in\n"
+        + "    /out:*) report=\"${arg#/out:}\" ;;\n"
+        + "  esac\n"
+        + "done\n"
+        + "echo \"<FxCopReport />\" > \"$report\"\n",
+      fxCopCmd, Charsets.UTF_8);
+    assertThat(fxCopCmd.setExecutable(true)).isTrue();
+    File report = new File(tmp.getRoot(), "fxcop-report.xml");
+
+    FxCopTimeout timeout = mock(FxCopTimeout.class);
+    when(timeout.millisFor("A.dll")).thenReturn(500L);
+    when(timeout.configuredMillis()).thenReturn(TimeUnit.MINUTES.toMillis(1));
+
+    new FxCopExecutor().execute(fxCopCmd.getAbsolutePath(), "A.dll", tmp.newFile("fxcop-sonarqube.ruleset"), report, timeout, false,
+      ImmutableList.<String>of(), ImmutableList.<String>of());
+
+    assertThat(report.isFile()).isTrue();
+    verify(timeout).record("A.dll", 500L);
+    verify(timeout, times(2)).record(Mockito.eq("A.dll"), Mockito.anyLong());
+  }
+
+  @Test
+  public void no_retry_after_configured_timeout() throws Exception {
+    thrown.expect(CommandException.class);
+    thrown.expectMessage("Timeout exceeded");
+
+    File fxCopCmd = tmp.newFile("FxCopCmd.exe");
+    Files.write("#!/bin/sh\nexec sleep 10\n", fxCopCmd, Charsets.UTF_8);
+    assertThat(fxCopCmd.setExecutable(true)).isTrue();
+
+    new FxCopExecutor().execute(fxCopCmd.getAbsolutePath(), "A.dll", tmp.newFile("fxcop-sonarqube.ruleset"), new File(tmp.getRoot(), "fxcop-report.xml"),
+      FxCopTimeout.fixed(500), false, ImmutableList.<String>of(), ImmutableList.<String>of());
+  }
+
+  private File stubFxCopCmd(int exitCode) throws IOException {
+    File fxCopCmd = tmp.newFile("FxCopCmd.exe");
+    Files.write(
+      "#!/bin/sh\n"
+        + "for arg in \"$@\"; do\n"
+        + "  case \"$arg\" in\n"
+        + "    /file:*) assembly=\"${arg#/file:}\" ;;\n"
+        + "    /out:*) report=\"${arg#/out:}\" ;;\n"
+        + "  esac\n"
+        + "done\n"
+        + "echo \"<FxCopReport><Targets><Target Name=\\\"$assembly\\\" /></Targets></FxCopReport>\" > \"$report\"\n"
+        + "exit " + exitCode + "\n",
+      fxCopCmd, Charsets.UTF_8);
+    assertThat(fxCopCmd.setExecutable(true)).isTrue();
+    return fxCopCmd;
+  }
+
+}
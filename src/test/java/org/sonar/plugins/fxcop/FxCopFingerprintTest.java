@@ -0,0 +1,70 @@
+/*
+ * SonarQube FxCop Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.fxcop;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class FxCopFingerprintTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void test() throws Exception {
+    File file = tmp.newFile("MyLibrary.dll");
+    Files.write("foo", file, Charsets.UTF_8);
+
+    String fingerprint = new FxCopFingerprint().add("CA1000").addContents(file).hex();
+    assertThat(fingerprint).hasSize(40);
+    assertThat(new FxCopFingerprint().add("CA1000").addContents(file).hex()).isEqualTo(fingerprint);
+    assertThat(new FxCopFingerprint().add("CA1001").addContents(file).hex()).isNotEqualTo(fingerprint);
+    assertThat(new FxCopFingerprint().add("CA10").add("00").addContents(file).hex()).isNotEqualTo(fingerprint);
+
+    Files.write("bar", file, Charsets.UTF_8);
+    assertThat(new FxCopFingerprint().add("CA1000").addContents(file).hex()).isNotEqualTo(fingerprint);
+
+    File missing = new File(tmp.getRoot(), "missing.pdb");
+    assertThat(new FxCopFingerprint().addContents(missing).hex()).isEqualTo(new FxCopFingerprint().addContents(missing).hex());
+    assertThat(new FxCopFingerprint().addStamp(file).hex()).isEqualTo(new FxCopFingerprint().addStamp(file).hex());
+  }
+
+  @Test
+  public void contents_only() throws Exception {
+    File file = tmp.newFile("MyLibrary.dll");
+    Files.write("foo", file, Charsets.UTF_8);
+    File copy = new File(tmp.newFolder("copy"), "MyLibrary.dll");
+    Files.copy(file, copy);
+
+    assertThat(new FxCopFingerprint().addContentsOnly(copy).hex()).isEqualTo(new FxCopFingerprint().addContentsOnly(file).hex());
+    assertThat(new FxCopFingerprint().addContents(copy).hex()).isNotEqualTo(new FxCopFingerprint().addContents(file).hex());
+
+    Files.write("bar", copy, Charsets.UTF_8);
+    assertThat(new FxCopFingerprint().addContentsOnly(copy).hex()).isNotEqualTo(new FxCopFingerprint().addContentsOnly(file).hex());
+  }
+
+}
@@ -0,0 +1,188 @@
+/*
+ * SonarQube FxCop Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.fxcop;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class FxCopIssueFileTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  @Test
+  public void write_and_replay() throws Exception {
+    File file = new File(tmp.getRoot(), "fxcop-issues.bin");
+    FxCopIssueFile.Writer writer = new FxCopIssueFile.Writer(file, "key");
+    writer.handle(new FxCopIssue(12, "CA1000", "c:\\src", "Class1.cs", 1, "First message"));
+    writer.handle(new FxCopIssue(34, "CA1000", "c:\\src", "Class1.cs", 2, "Second message \u00e9\u4e2d"));
+    writer.handle(new FxCopIssue(56, "CA2000", null, null, null, "CA1000"));
+    assertThat(writer.size()).isEqualTo(3);
+    assertThat(file).doesNotExist();
+    writer.commit();
+    writer.close();
+    assertThat(tmp.getRoot().list()).containsOnly("fxcop-issues.bin");
+
+    FxCopIssueFile.Reader reader = new FxCopIssueFile.Reader(file);
+    assertThat(reader.key()).isEqualTo("key");
+    assertThat(reader.size()).isEqualTo(3);
+
+    final List<FxCopIssue> issues = Lists.newArrayList();
+    reader.replay(new FxCopIssueHandler() {
+      @Override
+      public void handle(FxCopIssue issue) {
+        issues.add(issue);
+      }
+    });
+    assertThat(issues).hasSize(3);
+
+    assertThat(issues.get(0).reportLine()).isEqualTo(12);
+    assertThat(issues.get(0).ruleConfigKey()).isEqualTo("CA1000");
+    assertThat(issues.get(0).path()).isEqualTo("c:\\src");
+    assertThat(issues.get(0).file()).isEqualTo("Class1.cs");
+    assertThat(issues.get(0).line()).isEqualTo(1);
+    assertThat(issues.get(0).message()).isEqualTo("First message");
+
+    assertThat(issues.get(1).message()).isEqualTo("Second message \u00e9\u4e2d");
+    // Shared strings are decoded once
+    assertThat(issues.get(1).ruleConfigKey()).isSameAs(issues.get(0).ruleConfigKey());
+    assertThat(issues.get(1).path()).isSameAs(issues.get(0).path());
+
+    assertThat(issues.get(2).ruleConfigKey()).isEqualTo("CA2000");
+    assertThat(issues.get(2).path()).isNull();
+    assertThat(issues.get(2).file()).isNull();
+    assertThat(issues.get(2).hasLine()).isFalse();
+    assertThat(issues.get(2).message()).isEqualTo("CA1000");
+  }
+
+  @Test
+  public void cursor() throws Exception {
+    File file = new File(tmp.getRoot(), "fxcop-issues.bin");
+    FxCopIssueFile.Writer writer = new FxCopIssueFile.Writer(file, "");
+    for (int i = 0; i < 5000; i++) {
+      writer.handle(new FxCopIssue(i, "CA" + (i % 10), "path", "Class" + (i % 100) + ".cs", i, "Message " + i));
+    }
+    writer.commit();
+    writer.close();
+
+    FxCopIssueFile.Reader.Cursor cursor = new FxCopIssueFile.Reader(file).cursor();
+    for (int i = 0; i < 5000; i++) {
+      assertThat(cursor.next()).isTrue();
+      assertThat(cursor.reportLine()).isEqualTo(i);
+      assertThat(cursor.line()).isEqualTo(i);
+      assertThat(cursor.ruleConfigKey()).isEqualTo("CA" + (i % 10));
+      assertThat(cursor.file()).isEqualTo("Class" + (i % 100) + ".cs");
+      assertThat(cursor.message()).isEqualTo("Message " + i);
+    }
+    assertThat(cursor.next()).isFalse();
+  }
+
+  @Test
+  public void empty() throws Exception {
+    File file = new File(tmp.getRoot(), "fxcop-issues.bin");
+    FxCopIssueFile.Writer writer = new FxCopIssueFile.Writer(file, "key");
+    writer.commit();
+    writer.close();
+
+    FxCopIssueFile.Reader reader = new FxCopIssueFile.Reader(file);
+    assertThat(reader.size()).isEqualTo(0);
+    assertThat(reader.cursor().next()).isFalse();
+  }
+
+  @Test
+  public void open() throws Exception {
+    File file = new File(tmp.getRoot(), "fxcop-issues.bin");
+    assertThat(FxCopIssueFile.open(file, "key")).isNull();
+
+    FxCopIssueFile.Writer writer = new FxCopIssueFile.Writer(file, "key");
+    writer.handle(new FxCopIssue(12, "CA1000", "path", "Class1.cs", 1, "Message"));
+    writer.commit();
+    writer.close();
+    assertThat(FxCopIssueFile.open(file, "key").size()).isEqualTo(1);
+    assertThat(FxCopIssueFile.open(file, "other")).isNull();
+
+    byte[] bytes = Files.toByteArray(file);
+    Files.write(Arrays.copyOf(bytes, bytes.length - 1), file);
+    assertThat(FxCopIssueFile.open(file, "key")).isNull();
+
+    Files.write("<FxCopReport />", file, Charsets.UTF_8);
+    assertThat(FxCopIssueFile.open(file, "key")).isNull();
+  }
+
+  @Test
+  public void rewrite_after_opening_with_another_key() throws Exception {
+    File file = new File(tmp.getRoot(), "fxcop-issues.bin");
+    FxCopIssueFile.Writer writer = new FxCopIssueFile.Writer(file, "old");
+    writer.handle(new FxCopIssue(12, "CA1000", "path", "Class1.cs", 1, "Message"));
+    writer.commit();
+    writer.close();
+
+    // The stale file must not remain mapped, which would prevent Windows from replacing it
+    assertThat(FxCopIssueFile.open(file, "new")).isNull();
+
+    writer = new FxCopIssueFile.Writer(file, "new");
+    writer.handle(new FxCopIssue(13, "CA1001", "path", "Class2.cs", 2, "Other message"));
+    writer.handle(new FxCopIssue(14, "CA1001", "path", "Class2.cs", 3, "Other message"));
+    writer.commit();
+    writer.close();
+
+    assertThat(FxCopIssueFile.open(file, "old")).isNull();
+    assertThat(FxCopIssueFile.open(file, "new").size()).isEqualTo(2);
+    assertThat(tmp.getRoot().list()).containsOnly("fxcop-issues.bin");
+  }
+
+  @Test
+  public void close_without_commit() throws Exception {
+    File file = new File(tmp.getRoot(), "fxcop-issues.bin");
+    Files.write("previous", file, Charsets.UTF_8);
+
+    FxCopIssueFile.Writer writer = new FxCopIssueFile.Writer(file, "key");
+    writer.handle(new FxCopIssue(12, "CA1000", "path", "Class1.cs", 1, "Message"));
+    writer.close();
+
+    assertThat(tmp.getRoot().list()).containsOnly("fxcop-issues.bin");
+    assertThat(Files.toString(file, Charsets.UTF_8)).isEqualTo("previous");
+  }
+
+  @Test
+  public void invalid() throws Exception {
+    File file = tmp.newFile("fxcop-issues.bin");
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Invalid FxCop issue file: " + file.getAbsolutePath());
+
+    Files.write("<FxCopReport />", file, Charsets.UTF_8);
+    new FxCopIssueFile.Reader(file);
+  }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * SonarQube FxCop Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.fxcop;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class FxCopIssueFilterTest {
+
+  @Test
+  public void all() {
+    FxCopIssueFilter filter = FxCopIssueFilter.all();
+    assertThat(filter.acceptsRuleConfigKey("CA1000")).isTrue();
+    assertThat(filter.acceptsCertainty(0)).isTrue();
+    assertThat(filter.filtersCertainty()).isFalse();
+  }
+
+  @Test
+  public void filter() {
+    FxCopIssueFilter filter = new FxCopIssueFilter(ImmutableList.of("CA1000", "CA2000"), 75);
+    assertThat(filter.acceptsRuleConfigKey("CA1000")).isTrue();
+    assertThat(filter.acceptsRuleConfigKey("CA2000")).isTrue();
+    assertThat(filter.acceptsRuleConfigKey("CA3000")).isFalse();
+    assertThat(filter.acceptsCertainty(95)).isTrue();
+    assertThat(filter.acceptsCertainty(75)).isTrue();
+    assertThat(filter.acceptsCertainty(74)).isFalse();
+    assertThat(filter.filtersCertainty()).isTrue();
+
+    assertThat(filter.rejectedMessages()).isEqualTo(1);
+    assertThat(filter.rejectedIssues()).isEqualTo(1);
+  }
+
+}
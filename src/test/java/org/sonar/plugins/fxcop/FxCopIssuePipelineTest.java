@@ -0,0 +1,138 @@
+/*
+ * SonarQube FxCop Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.fxcop;
+
+import com.google.common.collect.Lists;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class FxCopIssuePipelineTest {
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  @Test
+  public void issues_are_consumed_in_order() {
+    final List<FxCopIssue> issues = Lists.newArrayList();
+    new FxCopIssuePipeline(3, 2).run(new IssuesProducer(1000), new FxCopIssueHandler() {
+      @Override
+      public void handle(FxCopIssue issue) {
+        issues.add(issue);
+      }
+    });
+
+    assertThat(issues).hasSize(1000);
+    for (int i = 0; i < issues.size(); i++) {
+      assertThat(issues.get(i).reportLine()).isEqualTo(i);
+    }
+  }
+
+  @Test
+  public void no_issue() {
+    final AtomicInteger count = new AtomicInteger();
+    new FxCopIssuePipeline(3, 2).run(new IssuesProducer(0), new FxCopIssueHandler() {
+      @Override
+      public void handle(FxCopIssue issue) {
+        count.incrementAndGet();
+      }
+    });
+
+    assertThat(count.get()).isEqualTo(0);
+  }
+
+  @Test
+  public void producer_failure() {
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Producer failure");
+
+    new FxCopIssuePipeline(3, 2).run(new FxCopIssuePipeline.Producer() {
+      @Override
+      public void produce(FxCopIssueHandler handler) {
+        new IssuesProducer(100).produce(handler);
+        throw new IllegalStateException("Producer failure");
+      }
+    }, new FxCopIssueHandler() {
+      @Override
+      public void handle(FxCopIssue issue) {
+      }
+    });
+  }
+
+  @Test
+  public void consumer_failure_stops_the_producer() {
+    final AtomicBoolean producerEnded = new AtomicBoolean();
+    final AtomicInteger produced = new AtomicInteger();
+    try {
+      new FxCopIssuePipeline(3, 2).run(new FxCopIssuePipeline.Producer() {
+        @Override
+        public void produce(FxCopIssueHandler handler) {
+          try {
+            while (true) {
+              handler.handle(issue(produced.getAndIncrement()));
+            }
+          } finally {
+            producerEnded.set(true);
+          }
+        }
+      }, new FxCopIssueHandler() {
+        @Override
+        public void handle(FxCopIssue issue) {
+          if (issue.reportLine() == 10) {
+            throw new IllegalStateException("Consumer failure");
+          }
+        }
+      });
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage()).isEqualTo("Consumer failure");
+    }
+
+    assertThat(producerEnded.get()).isTrue();
+    assertThat(produced.get()).isLessThan(100);
+  }
+
+  private static FxCopIssue issue(int i) {
+    return new FxCopIssue(i, "CA1000", "path", "file", i, "message");
+  }
+
+  private static class IssuesProducer implements FxCopIssuePipeline.Producer {
+
+    private final int count;
+
+    public IssuesProducer(int count) {
+      this.count = count;
+    }
+
+    @Override
+    public void produce(FxCopIssueHandler handler) {
+      for (int i = 0; i < count; i++) {
+        handler.handle(issue(i));
+      }
+    }
+
+  }
+
+}
@@ -33,6 +33,8 @@ public class FxCopIssueTest {
     assertThat(issue.path()).isEqualTo("path");
     assertThat(issue.file()).isNull();
     assertThat(issue.line()).isNull();
+    assertThat(issue.hasLine()).isFalse();
+    assertThat(issue.lineOrNoLine()).isEqualTo(FxCopIssue.NO_LINE);
     assertThat(issue.message()).isEqualTo("message");
 
     issue = new FxCopIssue(42, "CA1000", null, "foo", 1, "bar");
@@ -41,7 +43,18 @@ public class FxCopIssueTest {
     assertThat(issue.path()).isNull();
     assertThat(issue.file()).isEqualTo("foo");
     assertThat(issue.line()).isEqualTo(1);
+    assertThat(issue.hasLine()).isTrue();
+    assertThat(issue.lineOrNoLine()).isEqualTo(1);
     assertThat(issue.message()).isEqualTo("bar");
+
+    issue = new FxCopIssue(42, "CA1000", null, "foo", Integer.valueOf(0), "bar");
+    assertThat(issue.line()).isEqualTo(0);
+    assertThat(issue.hasLine()).isTrue();
+
+    issue = new FxCopIssue(42, "CA1000", null, "foo", FxCopIssue.NO_LINE, "bar");
+    assertThat(issue.line()).isNull();
+    assertThat(issue.hasLine()).isFalse();
+    assertThat(issue.lineOrNoLine()).isEqualTo(FxCopIssue.NO_LINE);
   }
 
 }
@@ -0,0 +1,131 @@
+/*
+ * SonarQube FxCop Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.fxcop;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.StringReader;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class FxCopJsonReaderTest {
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  @Test
+  public void tokens() {
+    FxCopJsonReader json = reader("{\"a\": [1, -2.5e3, \"x\\ty\\u0041\\\\\"],\n \"b\": {\"c\": true, \"d\": null}, \"e\": false}");
+
+    json.beginObject();
+    assertThat(json.nextName()).isEqualTo("a");
+    json.beginArray();
+    assertThat(json.peek()).isEqualTo(FxCopJsonReader.Token.NUMBER);
+    assertThat(json.nextInt()).isEqualTo(1);
+    assertThat(json.peek()).isEqualTo(FxCopJsonReader.Token.NUMBER);
+    json.skipValue();
+    assertThat(json.nextString()).isEqualTo("x\tyA\\");
+    assertThat(json.hasNext()).isFalse();
+    json.endArray();
+    assertThat(json.nextName()).isEqualTo("b");
+    assertThat(json.line()).isEqualTo(2);
+    json.beginObject();
+    assertThat(json.nextName()).isEqualTo("c");
+    assertThat(json.peek()).isEqualTo(FxCopJsonReader.Token.BOOLEAN);
+    json.skipValue();
+    assertThat(json.nextName()).isEqualTo("d");
+    assertThat(json.peek()).isEqualTo(FxCopJsonReader.Token.NULL);
+    json.skipValue();
+    json.endObject();
+    assertThat(json.nextName()).isEqualTo("e");
+    json.skipValue();
+    json.endObject();
+    assertThat(json.peek()).isEqualTo(FxCopJsonReader.Token.END_DOCUMENT);
+  }
+
+  @Test
+  public void skip_nested_values() {
+    FxCopJsonReader json = reader("[{\"a\": [[], {}, {\"b\": [\"]}\"]}]}, 42]");
+
+    json.beginArray();
+    json.skipValue();
+    assertThat(json.nextInt()).isEqualTo(42);
+    json.endArray();
+    assertThat(json.peek()).isEqualTo(FxCopJsonReader.Token.END_DOCUMENT);
+  }
+
+  @Test
+  public void unexpected_token() {
+    FxCopJsonReader json = reader("{\n\"a\": {}}");
+    json.beginObject();
+    json.nextName();
+
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Expected a string but was BEGIN_OBJECT in test.json at line 2");
+    json.nextString();
+  }
+
+  @Test
+  public void not_an_integer() {
+    FxCopJsonReader json = reader("[1.5]");
+    json.beginArray();
+
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Expected an integer but was \"1.5\"");
+    json.nextInt();
+  }
+
+  @Test
+  public void unterminated_string() {
+    FxCopJsonReader json = reader("[\"abc");
+    json.beginArray();
+
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Unterminated string in test.json at line 1");
+    json.nextString();
+  }
+
+  @Test
+  public void invalid_escape() {
+    FxCopJsonReader json = reader("[\"\\x\"]");
+    json.beginArray();
+
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Invalid escape sequence '\\x'");
+    json.nextString();
+  }
+
+  @Test
+  public void unexpected_end() {
+    FxCopJsonReader json = reader("[{\"a\": [");
+    json.beginArray();
+
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Unexpected end of the document");
+    json.skipValue();
+  }
+
+  private static FxCopJsonReader reader(String json) {
+    return new FxCopJsonReader(new StringReader(json), "test.json");
+  }
+
+}
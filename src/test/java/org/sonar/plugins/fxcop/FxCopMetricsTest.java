@@ -0,0 +1,70 @@
+/*
+ * SonarQube FxCop Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.fxcop;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class FxCopMetricsTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void test() throws Exception {
+    FxCopMetrics metrics = new FxCopMetrics();
+    metrics.addTime("parsing", TimeUnit.MILLISECONDS.toNanos(12));
+    metrics.addTime("submission", TimeUnit.MILLISECONDS.toNanos(3));
+    metrics.addTime("parsing", TimeUnit.MILLISECONDS.toNanos(30));
+    metrics.count("issuesParsed", 42);
+    metrics.count("issuesSubmitted", 40);
+
+    assertThat(metrics.time("parsing")).isEqualTo(42);
+    assertThat(metrics.time("fxCopCmd")).isEqualTo(0);
+    assertThat(metrics.count("issuesParsed")).isEqualTo(42);
+    assertThat(metrics.count("duplicates")).isEqualTo(0);
+
+    assertThat(metrics.toJson()).isEqualTo("{\n"
+      + "  \"timingsMs\": {\"parsing\": 42, \"submission\": 3},\n"
+      + "  \"counters\": {\"issuesParsed\": 42, \"issuesSubmitted\": 40}\n"
+      + "}\n");
+    assertThat(metrics.summary()).isEqualTo("FxCop analysis: parsing=42ms submission=3ms issuesParsed=42 issuesSubmitted=40");
+
+    File file = tmp.newFile("fxcop-metrics.json");
+    metrics.write(file);
+    assertThat(Files.toString(file, Charsets.UTF_8)).isEqualTo(metrics.toJson());
+  }
+
+  @Test
+  public void empty() {
+    FxCopMetrics metrics = new FxCopMetrics();
+    assertThat(metrics.toJson()).isEqualTo("{\n  \"timingsMs\": {},\n  \"counters\": {}\n}\n");
+    assertThat(metrics.summary()).isEqualTo("FxCop analysis:");
+  }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * SonarQube FxCop Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.fxcop;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class FxCopProcessSlotsTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  @Test
+  public void waits_for_a_free_slot() throws Exception {
+    final FxCopProcessSlots slots = new FxCopProcessSlots(new File(tmp.getRoot(), "slots"), 2, 10);
+    FxCopProcessSlots.Slot first = slots.acquire(60000);
+    FxCopProcessSlots.Slot second = slots.acquire(60000);
+
+    ExecutorService executorService = Executors.newSingleThreadExecutor();
+    try {
+      Future<FxCopProcessSlots.Slot> third = executorService.submit(new Callable<FxCopProcessSlots.Slot>() {
+        @Override
+        public FxCopProcessSlots.Slot call() {
+          return slots.acquire(60000);
+        }
+      });
+
+      try {
+        third.get(200, TimeUnit.MILLISECONDS);
+        fail();
+      } catch (TimeoutException e) {
+        // Expected: both slots are busy
+      }
+
+      second.release();
+      third.get(10, TimeUnit.SECONDS).release();
+      first.release();
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  @Test
+  public void owner_is_recorded_while_held() throws Exception {
+    File directory = new File(tmp.getRoot(), "slots");
+    FxCopProcessSlots.Slot slot = new FxCopProcessSlots(directory, 1).acquire(60000);
+    File slotFile = new File(directory, "fxcop-slot-0.lock");
+    assertThat(Files.toString(slotFile, Charsets.UTF_8)).contains(Thread.currentThread().getName());
+
+    slot.release();
+    assertThat(slotFile.length()).isEqualTo(0);
+  }
+
+  @Test
+  public void recovers_stale_slot() throws Exception {
+    File directory = tmp.newFolder("slots");
+    File slotFile = new File(directory, "fxcop-slot-0.lock");
+    Files.write("42@crashed-host/main 1400000000000", slotFile, Charsets.UTF_8);
+
+    FxCopProcessSlots.Slot slot = new FxCopProcessSlots(directory, 1).acquire(60000);
+    assertThat(Files.toString(slotFile, Charsets.UTF_8)).excludes("crashed-host");
+    slot.release();
+  }
+
+  @Test
+  public void invalid_number_of_slots() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("The number of FxCopCmd.exe slots must be greater than 0.");
+
+    new FxCopProcessSlots(tmp.getRoot(), 0);
+  }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * SonarQube FxCop Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.fxcop;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class FxCopReportCacheTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  @Test
+  public void put_and_get() throws Exception {
+    File directory = new File(tmp.getRoot(), "cache");
+    FxCopReportCache cache = new FxCopReportCache(directory, 1024);
+    File target = new File(tmp.newFolder("workspace"), "fxcop-report.xml");
+
+    assertThat(cache.get("abc", target)).isFalse();
+    assertThat(target).doesNotExist();
+
+    cache.put("abc", report("report.xml", "<FxCopReport />"));
+    assertThat(cache.get("abc", target)).isTrue();
+    assertThat(Files.toString(target, Charsets.UTF_8)).isEqualTo("<FxCopReport />");
+    assertThat(cache.get("def", target)).isFalse();
+
+    // Existing reports are replaced
+    cache.put("def", report("other.xml", "<FxCopReport Version=\"10.0\" />"));
+    assertThat(cache.get("def", target)).isTrue();
+    assertThat(Files.toString(target, Charsets.UTF_8)).isEqualTo("<FxCopReport Version=\"10.0\" />");
+
+    assertThat(directory.list()).containsOnly("abc.xml", "def.xml");
+    assertThat(target.getParentFile().list()).containsOnly("fxcop-report.xml");
+  }
+
+  @Test
+  public void evicts_least_recently_used_entries() throws Exception {
+    File directory = new File(tmp.getRoot(), "cache");
+    FxCopReportCache cache = new FxCopReportCache(directory, 25);
+    File target = new File(tmp.getRoot(), "fxcop-report.xml");
+
+    cache.put("a", report("a.xml", "0123456789"));
+    cache.put("b", report("b.xml", "0123456789"));
+    new File(directory, "a.xml").setLastModified(System.currentTimeMillis() - 20000);
+    new File(directory, "b.xml").setLastModified(System.currentTimeMillis() - 10000);
+
+    // Reading "a" makes "b" the least recently used one
+    assertThat(cache.get("a", target)).isTrue();
+    cache.put("c", report("c.xml", "0123456789"));
+
+    assertThat(directory.list()).containsOnly("a.xml", "c.xml");
+  }
+
+  @Test
+  public void abandoned_temporary_files_are_deleted() throws Exception {
+    File directory = tmp.newFolder("cache");
+    File abandoned = new File(directory, "a.xml.42.tmp");
+    Files.write("<FxCop", abandoned, Charsets.UTF_8);
+    abandoned.setLastModified(System.currentTimeMillis() - 2 * 3600 * 1000);
+    File recent = new File(directory, "b.xml.42.tmp");
+    Files.write("<FxCop", recent, Charsets.UTF_8);
+
+    new FxCopReportCache(directory, 1024).evict();
+
+    assertThat(directory.list()).containsOnly("b.xml.42.tmp");
+  }
+
+  @Test
+  public void concurrent_readers_and_writers() throws Exception {
+    final File directory = new File(tmp.getRoot(), "cache");
+    final File report = report("report.xml", "<FxCopReport><Targets /></FxCopReport>");
+    final File workspaces = tmp.newFolder("workspaces");
+
+    ExecutorService executorService = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Boolean>> futures = Lists.newArrayList();
+      for (int i = 0; i < 40; i++) {
+        final int workspace = i;
+        futures.add(executorService.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() throws Exception {
+            FxCopReportCache cache = new FxCopReportCache(directory, 1024);
+            File target = new File(workspaces, "fxcop-report-" + workspace + ".xml");
+            if (!cache.get("key" + (workspace % 3), target)) {
+              cache.put("key" + (workspace % 3), report);
+              return true;
+            }
+            return "<FxCopReport><Targets /></FxCopReport>".equals(Files.toString(target, Charsets.UTF_8));
+          }
+        }));
+      }
+      for (Future<Boolean> future : futures) {
+        assertThat(future.get()).isTrue();
+      }
+    } finally {
+      executorService.shutdownNow();
+    }
+
+    assertThat(directory.list()).containsOnly("key0.xml", "key1.xml", "key2.xml");
+  }
+
+  @Test
+  public void concurrent_evictions() throws Exception {
+    final File directory = new File(tmp.getRoot(), "cache");
+    final File report = report("report.xml", "0123456789");
+    final File workspaces = tmp.newFolder("workspaces");
+
+    // Hits refresh the modification times and evictions delete entries while other analyses are sorting them
+    ExecutorService executorService = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Boolean>> futures = Lists.newArrayList();
+      for (int i = 0; i < 200; i++) {
+        final int workspace = i;
+        futures.add(executorService.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() throws Exception {
+            FxCopReportCache cache = new FxCopReportCache(directory, 35);
+            File target = new File(workspaces, "fxcop-report-" + workspace + ".xml");
+            if (!cache.get("key" + (workspace % 7), target)) {
+              cache.put("key" + (workspace % 7), report);
+            }
+            return true;
+          }
+        }));
+      }
+      for (Future<Boolean> future : futures) {
+        assertThat(future.get()).isTrue();
+      }
+    } finally {
+      executorService.shutdownNow();
+    }
+
+    new FxCopReportCache(directory, 35).evict();
+    assertThat(directory.list().length).isLessThanOrEqualTo(3);
+  }
+
+  @Test
+  public void invalid_max_size() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("The maximum size of the FxCop report cache must be greater than 0.");
+
+    new FxCopReportCache(tmp.getRoot(), 0);
+  }
+
+  private File report(String name, String contents) throws Exception {
+    File report = tmp.newFile(name);
+    Files.write(contents, report, Charsets.UTF_8);
+    return report;
+  }
+
+}
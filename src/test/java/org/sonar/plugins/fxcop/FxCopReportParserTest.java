@@ -19,11 +19,18 @@
  */
 package org.sonar.plugins.fxcop;
 
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 import static org.fest.assertions.Assertions.assertThat;
@@ -54,6 +61,263 @@ public class FxCopReportParserTest {
     assertThat(issue.file()).isEqualTo("Class1.cs");
     assertThat(issue.line()).isEqualTo(12);
     assertThat(issue.message()).isEqualTo("In method 'Class1.Add(int, int)', consider providing a more meaningful name than parameter name 'a'.");
+
+    FxCopIssue otherIssue = issues.get(3);
+    assertThat(otherIssue.ruleConfigKey()).isSameAs(issue.ruleConfigKey());
+    assertThat(otherIssue.path()).isSameAs(issue.path());
+    assertThat(otherIssue.file()).isSameAs(issue.file());
+  }
+
+  @Test
+  public void valid_streamed() {
+    final List<FxCopIssue> issues = Lists.newArrayList();
+    new FxCopReportParser().parse(new File("src/test/resources/FxCopReportParserTest/valid.xml"), new FxCopIssueHandler() {
+      @Override
+      public void handle(FxCopIssue issue) {
+        issues.add(issue);
+      }
+    });
+
+    assertThat(issues).hasSize(5);
+    assertThat(issues.get(0).ruleConfigKey()).isEqualTo("CA2210");
+    assertThat(issues.get(2).reportLine()).isEqualTo(23);
+    assertThat(issues.get(4).ruleConfigKey()).isEqualTo("CA1822");
+  }
+
+  @Test
+  public void valid_utf16() {
+    List<FxCopIssue> issues = new FxCopReportParser().parse(new File("src/test/resources/FxCopReportParserTest/valid_utf16.xml"));
+
+    assertThat(issues).hasSize(5);
+    FxCopIssue issue = issues.get(2);
+    assertThat(issue.reportLine()).isEqualTo(23);
+    assertThat(issue.ruleConfigKey()).isEqualTo("CA1704");
+    assertThat(issue.file()).isEqualTo("Class1.cs");
+    assertThat(issue.line()).isEqualTo(12);
+    assertThat(issue.message()).isEqualTo("In method 'Class1.Add(int, int)', consider providing a more meaningful name than parameter name 'a'.");
+  }
+
+  @Test
+  public void detect_encoding() throws IOException {
+    assertThat(detectEncoding(new byte[] {'<', 'a', '/', '>'})).isEqualTo(Charsets.UTF_8);
+    assertThat(detectEncoding(new byte[] {})).isEqualTo(Charsets.UTF_8);
+    assertThat(detectEncoding("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><a/>".getBytes("US-ASCII"))).isEqualTo(Charsets.ISO_8859_1);
+    assertThat(detectEncoding("<?xml version='1.0' encoding='unknown-charset'?><a/>".getBytes("US-ASCII"))).isEqualTo(Charsets.UTF_8);
+    assertThat(detectEncoding("<?xml version=\"1.0\" encoding=\"utf-16\"?><a/>".getBytes("UTF-16LE"))).isEqualTo(Charsets.UTF_16LE);
+    assertThat(detectEncoding("<?xml version=\"1.0\" encoding=\"utf-16\"?><a/>".getBytes("UTF-16BE"))).isEqualTo(Charsets.UTF_16BE);
+
+    InputStream input = new BufferedInputStream(new ByteArrayInputStream(new byte[] {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF, '<'}));
+    assertThat(FxCopReportParser.detectEncoding(input)).isEqualTo(Charsets.UTF_8);
+    assertThat(input.read()).isEqualTo('<');
+
+    input = new BufferedInputStream(new ByteArrayInputStream(new byte[] {(byte) 0xFF, (byte) 0xFE, '<', 0}));
+    assertThat(FxCopReportParser.detectEncoding(input)).isEqualTo(Charsets.UTF_16LE);
+    assertThat(input.read()).isEqualTo('<');
+  }
+
+  private static Object detectEncoding(byte[] bytes) throws IOException {
+    return FxCopReportParser.detectEncoding(new BufferedInputStream(new ByteArrayInputStream(bytes)));
+  }
+
+  @Test
+  public void external_entities_are_not_resolved() {
+    List<FxCopIssue> issues;
+    try {
+      issues = new FxCopReportParser().parse(new File("src/test/resources/FxCopReportParserTest/external_entity.xml"));
+    } catch (RuntimeException e) {
+      // Rejecting the undeclared entity is fine too
+      return;
+    }
+
+    for (FxCopIssue issue : issues) {
+      assertThat(issue.message()).excludes("SECRET");
+    }
+  }
+
+  @Test
+  public void valid_multiple_reports() {
+    File valid = new File("src/test/resources/FxCopReportParserTest/valid.xml");
+    File validUtf16 = new File("src/test/resources/FxCopReportParserTest/valid_utf16.xml");
+    final List<FxCopIssue> issues = Lists.newArrayList();
+    new FxCopReportParser().parse(ImmutableList.of(valid, validUtf16, valid, validUtf16), new FxCopIssueHandler() {
+      @Override
+      public void handle(FxCopIssue issue) {
+        issues.add(issue);
+      }
+    }, 3);
+
+    assertThat(issues).hasSize(20);
+    for (int i = 0; i < 4; i++) {
+      assertThat(issues.get(5 * i).ruleConfigKey()).isEqualTo("CA2210");
+      assertThat(issues.get(5 * i + 2).reportLine()).isEqualTo(23);
+      assertThat(issues.get(5 * i + 4).ruleConfigKey()).isEqualTo("CA1822");
+    }
+  }
+
+  @Test
+  public void invalid_line_multiple_reports() {
+    thrown.expectMessage("Expected an integer instead of \"foo\" for the attribute \"Line\"");
+    thrown.expectMessage("invalid_line.xml at line 9");
+
+    File valid = new File("src/test/resources/FxCopReportParserTest/valid.xml");
+    new FxCopReportParser().parse(ImmutableList.of(valid, new File("src/test/resources/FxCopReportParserTest/invalid_line.xml"), valid), new FxCopIssueHandler() {
+      @Override
+      public void handle(FxCopIssue issue) {
+      }
+    }, 2);
+  }
+
+  @Test
+  public void non_existing_multiple_reports() {
+    thrown.expectMessage("Unable to parse the FxCop report: " + new File("src/test/resources/FxCopReportParserTest/non_existing.xml").getAbsolutePath());
+
+    File valid = new File("src/test/resources/FxCopReportParserTest/valid.xml");
+    new FxCopReportParser().parse(ImmutableList.of(valid, new File("src/test/resources/FxCopReportParserTest/non_existing.xml")), new FxCopIssueHandler() {
+      @Override
+      public void handle(FxCopIssue issue) {
+      }
+    }, 2);
+  }
+
+  @Test
+  public void split_on_targets() {
+    File file = new File("src/test/resources/FxCopReportParserTest/multiple_targets.xml");
+    List<FxCopIssue> sequential = new FxCopReportParser().parse(file);
+    final List<FxCopIssue> split = Lists.newArrayList();
+    new FxCopReportParser(0).parse(file, new FxCopIssueHandler() {
+      @Override
+      public void handle(FxCopIssue issue) {
+        split.add(issue);
+      }
+    }, 3);
+
+    assertThat(sequential).hasSize(6);
+    assertThat(split).hasSize(6);
+    for (int i = 0; i < sequential.size(); i++) {
+      assertThat(split.get(i).reportLine()).isEqualTo(sequential.get(i).reportLine());
+      assertThat(split.get(i).ruleConfigKey()).isEqualTo(sequential.get(i).ruleConfigKey());
+      assertThat(split.get(i).path()).isEqualTo(sequential.get(i).path());
+      assertThat(split.get(i).file()).isEqualTo(sequential.get(i).file());
+      assertThat(split.get(i).line()).isEqualTo(sequential.get(i).line());
+      assertThat(split.get(i).message()).isEqualTo(sequential.get(i).message());
+    }
+
+    assertThat(split.get(0).reportLine()).isEqualTo(7);
+    assertThat(split.get(0).ruleConfigKey()).isEqualTo("CA1020");
+    assertThat(split.get(3).reportLine()).isEqualTo(22);
+    assertThat(split.get(3).ruleConfigKey()).isEqualTo("CA1822");
+    assertThat(split.get(4).reportLine()).isEqualTo(35);
+    assertThat(split.get(4).ruleConfigKey()).isEqualTo("CA1704");
+    assertThat(split.get(5).reportLine()).isEqualTo(41);
+    assertThat(split.get(5).ruleConfigKey()).isEqualTo("CA1014");
+  }
+
+  @Test
+  public void split_on_targets_skips_comments_and_cdata() {
+    File file = new File("src/test/resources/FxCopReportParserTest/multiple_targets_comments.xml");
+    List<FxCopIssue> sequential = new FxCopReportParser().parse(file);
+    final List<FxCopIssue> split = Lists.newArrayList();
+    new FxCopReportParser(0).parse(file, new FxCopIssueHandler() {
+      @Override
+      public void handle(FxCopIssue issue) {
+        split.add(issue);
+      }
+    }, 2);
+
+    assertThat(sequential).hasSize(6);
+    assertThat(split).hasSize(6);
+    for (int i = 0; i < sequential.size(); i++) {
+      assertThat(split.get(i).reportLine()).isEqualTo(sequential.get(i).reportLine());
+      assertThat(split.get(i).ruleConfigKey()).isEqualTo(sequential.get(i).ruleConfigKey());
+      assertThat(split.get(i).message()).isEqualTo(sequential.get(i).message());
+    }
+
+    assertThat(split.get(3).reportLine()).isEqualTo(24);
+    assertThat(split.get(3).message()).isEqualTo("Mark 'Class1.Sub(int, int)' as static. </Target>");
+    assertThat(split.get(5).reportLine()).isEqualTo(43);
+  }
+
+  @Test
+  public void split_on_targets_invalid_line() {
+    thrown.expectMessage("Expected an integer instead of \"foo\" for the attribute \"Line\"");
+    thrown.expectMessage("multiple_targets_invalid_line.xml at line 20");
+
+    new FxCopReportParser(0).parse(new File("src/test/resources/FxCopReportParserTest/multiple_targets_invalid_line.xml"), new FxCopIssueHandler() {
+      @Override
+      public void handle(FxCopIssue issue) {
+      }
+    }, 2);
+  }
+
+  @Test
+  public void split_on_targets_utf16_is_sequential() {
+    final List<FxCopIssue> issues = Lists.newArrayList();
+    new FxCopReportParser(0).parse(new File("src/test/resources/FxCopReportParserTest/valid_utf16.xml"), new FxCopIssueHandler() {
+      @Override
+      public void handle(FxCopIssue issue) {
+        issues.add(issue);
+      }
+    }, 2);
+
+    assertThat(issues).hasSize(5);
+    assertThat(issues.get(2).reportLine()).isEqualTo(23);
+  }
+
+  @Test
+  public void stops_after_targets() {
+    List<FxCopIssue> issues = new FxCopReportParser().parse(new File("src/test/resources/FxCopReportParserTest/stops_after_targets.xml"));
+
+    assertThat(issues).hasSize(1);
+    assertThat(issues.get(0).ruleConfigKey()).isEqualTo("CA1822");
+    assertThat(issues.get(0).line()).isEqualTo(12);
+  }
+
+  @Test
+  public void skips_rules() {
+    List<FxCopIssue> issues = new FxCopReportParser().parse(new File("src/test/resources/FxCopReportParserTest/skips_rules.xml"));
+
+    assertThat(issues).hasSize(1);
+    assertThat(issues.get(0).ruleConfigKey()).isEqualTo("CA1020");
+    assertThat(issues.get(0).reportLine()).isEqualTo(14);
+  }
+
+  @Test
+  public void filtered() {
+    File file = new File("src/test/resources/FxCopReportParserTest/valid.xml");
+    final List<FxCopIssue> issues = Lists.newArrayList();
+    FxCopIssueHandler handler = new FxCopIssueHandler() {
+      @Override
+      public void handle(FxCopIssue issue) {
+        issues.add(issue);
+      }
+    };
+
+    new FxCopReportParser().parse(file, new FxCopIssueFilter(ImmutableList.of("CA1704", "CA1822"), 0), handler);
+    assertThat(issues).hasSize(3);
+    assertThat(issues.get(0).ruleConfigKey()).isEqualTo("CA1704");
+    assertThat(issues.get(0).reportLine()).isEqualTo(23);
+    assertThat(issues.get(2).ruleConfigKey()).isEqualTo("CA1822");
+
+    issues.clear();
+    new FxCopReportParser().parse(file, new FxCopIssueFilter(null, 80), handler);
+    assertThat(issues).hasSize(3);
+    assertThat(issues.get(0).ruleConfigKey()).isEqualTo("CA2210");
+    assertThat(issues.get(1).ruleConfigKey()).isEqualTo("CA1014");
+    assertThat(issues.get(2).ruleConfigKey()).isEqualTo("CA1822");
+
+    issues.clear();
+    new FxCopReportParser().parse(file, new FxCopIssueFilter(ImmutableList.of("CA1704", "CA1822"), 80), handler);
+    assertThat(issues).hasSize(1);
+    assertThat(issues.get(0).ruleConfigKey()).isEqualTo("CA1822");
+    assertThat(issues.get(0).reportLine()).isEqualTo(29);
+
+    issues.clear();
+    new FxCopReportParser(0).parse(new File("src/test/resources/FxCopReportParserTest/multiple_targets.xml"), new FxCopIssueFilter(ImmutableList.of("CA1020", "CA1704"), 0),
+      handler, 2);
+    assertThat(issues).hasSize(2);
+    assertThat(issues.get(0).ruleConfigKey()).isEqualTo("CA1020");
+    assertThat(issues.get(1).ruleConfigKey()).isEqualTo("CA1704");
+    assertThat(issues.get(1).reportLine()).isEqualTo(35);
   }
 
   @Test
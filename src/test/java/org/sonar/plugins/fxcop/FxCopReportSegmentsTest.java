@@ -0,0 +1,106 @@
+/*
+ * SonarQube FxCop Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.fxcop;
+
+import com.google.common.base.Charsets;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class FxCopReportSegmentsTest {
+
+  @Test
+  public void scan() {
+    String report = "<FxCopReport>\n"
+      + " <Targets>\n"
+      + "  <Target Name=\"a\">\n"
+      + "   <Message CheckId=\"CA1000\"/>\n"
+      + "  </Target>\n"
+      + "  <Target Name=\"empty\"/>\n"
+      + "  <Target\n"
+      + "   Name=\"b\"><Message CheckId=\"CA2000\"/></Target>\n"
+      + " </Targets>\n"
+      + "</FxCopReport>\n";
+
+    FxCopReportSegments segments = FxCopReportSegments.scan(ByteBuffer.wrap(report.getBytes(Charsets.UTF_8)));
+
+    assertThat(segments.targets()).hasSize(2);
+    assertThat(segment(report, segments.targets().get(0))).isEqualTo("<Target Name=\"a\">\n   <Message CheckId=\"CA1000\"/>\n  </Target>");
+    assertThat(segments.targets().get(0).lineOffset()).isEqualTo(2);
+    assertThat(segment(report, segments.targets().get(1))).isEqualTo("<Target\n   Name=\"b\"><Message CheckId=\"CA2000\"/></Target>");
+    assertThat(segments.targets().get(1).lineOffset()).isEqualTo(6);
+
+    assertThat(new String(segments.rest(), Charsets.UTF_8)).isEqualTo("<FxCopReport>\n"
+      + " <Targets>\n"
+      + "  \n\n\n"
+      + "  <Target Name=\"empty\"/>\n"
+      + "  \n\n"
+      + " </Targets>\n"
+      + "</FxCopReport>\n");
+  }
+
+  @Test
+  public void scan_without_targets() {
+    String report = "<FxCopReport><Targets></Targets><Rules><Rule CheckId=\"CA1000\"/></Rules></FxCopReport>";
+
+    FxCopReportSegments segments = FxCopReportSegments.scan(ByteBuffer.wrap(report.getBytes(Charsets.UTF_8)));
+
+    assertThat(segments.targets()).isEmpty();
+    assertThat(new String(segments.rest(), Charsets.UTF_8)).isEqualTo(report);
+  }
+
+  @Test
+  public void scan_skips_comments_cdata_and_processing_instructions() {
+    String report = "<?xml version=\"1.0\"?><?Target x?>\n"
+      + "<FxCopReport>\n"
+      + " <!-- <Target Name=\"commented\"> -->\n"
+      + " <Targets>\n"
+      + "  <Target Name=\"a\">\n"
+      + "   <!--\n </Target> -->\n"
+      + "   <Message CheckId=\"CA1000\"><Issue><![CDATA[</Target>\n]]></Issue></Message>\n"
+      + "  </Target>\n"
+      + " </Targets>\n"
+      + "</FxCopReport>\n";
+
+    FxCopReportSegments segments = FxCopReportSegments.scan(ByteBuffer.wrap(report.getBytes(Charsets.UTF_8)));
+
+    assertThat(segments.targets()).hasSize(1);
+    assertThat(segment(report, segments.targets().get(0))).isEqualTo("<Target Name=\"a\">\n"
+      + "   <!--\n </Target> -->\n"
+      + "   <Message CheckId=\"CA1000\"><Issue><![CDATA[</Target>\n]]></Issue></Message>\n"
+      + "  </Target>");
+    assertThat(segments.targets().get(0).lineOffset()).isEqualTo(4);
+
+    assertThat(new String(segments.rest(), Charsets.UTF_8)).isEqualTo("<?xml version=\"1.0\"?><?Target x?>\n"
+      + "<FxCopReport>\n"
+      + " <!-- <Target Name=\"commented\"> -->\n"
+      + " <Targets>\n"
+      + "  \n\n\n\n\n\n"
+      + " </Targets>\n"
+      + "</FxCopReport>\n");
+  }
+
+  private static String segment(String report, FxCopReportSegments.Segment segment) {
+    return report.substring(segment.start(), segment.end());
+  }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * SonarQube FxCop Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.fxcop;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.rules.RuleParam;
+import org.sonar.api.rules.XMLRuleParser;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class FxCopRuleCatalogTest {
+
+  private static final String RULES_DIRECTORY = "src/main/rules";
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  @Test
+  public void same_rules_as_xml() throws Exception {
+    File catalogFile = new File(tmp.getRoot(), "rules.catalog");
+    FxCopRuleCatalogGenerator.generate(new File(RULES_DIRECTORY), catalogFile);
+    FxCopRuleCatalog catalog = FxCopRuleCatalog.load(new FileInputStream(catalogFile));
+
+    assertSameRules(catalog.createRules("cs"), new XMLRuleParser().parse(new File(RULES_DIRECTORY, "cs-rules.xml")));
+    assertSameRules(catalog.createRules("vbnet"), new XMLRuleParser().parse(new File(RULES_DIRECTORY, "vbnet-rules.xml")));
+
+    assertThat(catalogFile.length()).isLessThan(new File(RULES_DIRECTORY, "cs-rules.xml").length() / 4);
+  }
+
+  @Test
+  public void packaged_catalog() {
+    assertThat(FxCopRuleCatalog.instance().createRules("cs")).hasSize(233);
+    assertThat(FxCopRuleCatalog.instance().createRules("vbnet")).hasSize(233);
+  }
+
+  @Test
+  public void unknown_language() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("No FxCop rules are available for the language \"foo\".");
+
+    FxCopRuleCatalog.instance().createRules("foo");
+  }
+
+  private static void assertSameRules(List<org.sonar.api.rules.Rule> actual, List<org.sonar.api.rules.Rule> expected) {
+    assertThat(actual).hasSize(expected.size());
+    for (int i = 0; i < expected.size(); i++) {
+      org.sonar.api.rules.Rule actualRule = actual.get(i);
+      org.sonar.api.rules.Rule expectedRule = expected.get(i);
+
+      assertThat(actualRule.getKey()).isEqualTo(expectedRule.getKey());
+      assertThat(actualRule.getConfigKey()).isEqualTo(expectedRule.getConfigKey());
+      assertThat(actualRule.getName()).isEqualTo(expectedRule.getName());
+      assertThat(actualRule.getDescription()).isEqualTo(expectedRule.getDescription());
+      assertThat(actualRule.getSeverity()).isEqualTo(expectedRule.getSeverity());
+      assertThat(actualRule.getCardinality()).isEqualTo(expectedRule.getCardinality());
+      assertThat(actualRule.getStatus()).isEqualTo(expectedRule.getStatus());
+
+      assertThat(actualRule.getParams()).hasSize(expectedRule.getParams().size());
+      for (int j = 0; j < expectedRule.getParams().size(); j++) {
+        RuleParam actualParam = actualRule.getParams().get(j);
+        RuleParam expectedParam = expectedRule.getParams().get(j);
+        assertThat(actualParam.getKey()).isEqualTo(expectedParam.getKey());
+        assertThat(actualParam.getDescription()).isEqualTo(expectedParam.getDescription());
+        assertThat(actualParam.getType()).isEqualTo(expectedParam.getType());
+        assertThat(actualParam.getDefaultValue()).isEqualTo(expectedParam.getDefaultValue());
+      }
+    }
+  }
+
+}
@@ -32,7 +32,7 @@ public class FxCopRuleRepositoryTest {
 
   @Test
   public void test_cs() {
-    FxCopRuleRepository repo = new FxCopRuleRepository(new FxCopConfiguration("cs", "cs-fxcop", "", "", "", "", "", ""), new XMLRuleParser());
+    FxCopRuleRepository repo = new FxCopRuleRepository(new FxCopConfiguration("cs", "cs-fxcop", "", "", "", "", "", ""));
     assertThat(repo.getLanguage()).isEqualTo("cs");
     assertThat(repo.getKey()).isEqualTo("cs-fxcop");
 
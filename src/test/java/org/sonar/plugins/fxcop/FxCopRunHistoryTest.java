@@ -0,0 +1,80 @@
+/*
+ * SonarQube FxCop Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.fxcop;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class FxCopRunHistoryTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void record() {
+    FxCopRunHistory history = new FxCopRunHistory(new File(tmp.getRoot(), "fxcop-history.tsv"));
+    assertThat(history.runs()).isEmpty();
+
+    history.record(new FxCopRunHistory.Run(1000, 2000, 3));
+    history.record(new FxCopRunHistory.Run(4000, 5000, 6));
+
+    List<FxCopRunHistory.Run> runs = history.runs();
+    assertThat(runs).hasSize(2);
+    assertThat(runs.get(0).durationMillis()).isEqualTo(1000);
+    assertThat(runs.get(0).assemblyBytes()).isEqualTo(2000);
+    assertThat(runs.get(0).ruleCount()).isEqualTo(3);
+    assertThat(runs.get(1).durationMillis()).isEqualTo(4000);
+  }
+
+  @Test
+  public void malformed_lines_are_ignored() throws Exception {
+    File file = tmp.newFile("fxcop-history.tsv");
+    Files.write("1000\t2000\t3\nfoo\n\n4000\t5000\n7000\t8000\t9\n", file, Charsets.UTF_8);
+
+    List<FxCopRunHistory.Run> runs = new FxCopRunHistory(file).runs();
+    assertThat(runs).hasSize(2);
+    assertThat(runs.get(0).durationMillis()).isEqualTo(1000);
+    assertThat(runs.get(1).durationMillis()).isEqualTo(7000);
+  }
+
+  @Test
+  public void only_most_recent_runs_are_kept() throws Exception {
+    File file = new File(tmp.getRoot(), "fxcop-history.tsv");
+    FxCopRunHistory history = new FxCopRunHistory(file);
+    for (int i = 0; i < 250; i++) {
+      history.record(new FxCopRunHistory.Run(i, 0, 0));
+    }
+
+    List<FxCopRunHistory.Run> runs = history.runs();
+    assertThat(runs).hasSize(100);
+    assertThat(runs.get(0).durationMillis()).isEqualTo(150);
+    assertThat(runs.get(99).durationMillis()).isEqualTo(249);
+    assertThat(Files.readLines(file, Charsets.UTF_8).size()).isLessThan(200);
+  }
+
+}
@@ -0,0 +1,169 @@
+/*
+ * SonarQube FxCop Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.fxcop;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.File;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class FxCopSarifParserTest {
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  @Test
+  public void roslyn_v1() {
+    List<FxCopIssue> issues = parse("roslyn_v1.sarif", FxCopIssueFilter.all());
+
+    assertThat(issues).hasSize(3);
+
+    FxCopIssue issue = issues.get(0);
+    assertThat(issue.reportLine()).isEqualTo(14);
+    assertThat(issue.ruleConfigKey()).isEqualTo("CA1000");
+    assertThat(issue.path()).isEqualTo("C:/Projects/My Library");
+    assertThat(issue.file()).isEqualTo("Class1.cs");
+    assertThat(issue.line()).isEqualTo(12);
+    assertThat(issue.message()).isEqualTo("Do not declare static members on generic types");
+
+    issue = issues.get(1);
+    assertThat(issue.ruleConfigKey()).isEqualTo("CA2000");
+    assertThat(issue.path()).isEqualTo("/home/user/project");
+    assertThat(issue.file()).isEqualTo("Class2.cs");
+    assertThat(issue.line()).isEqualTo(3);
+    assertThat(issue.message()).isEqualTo("Dispose objects before losing scope \"\u00e9/\"");
+
+    issue = issues.get(2);
+    assertThat(issue.ruleConfigKey()).isEqualTo("CA1014");
+    assertThat(issue.path()).isNull();
+    assertThat(issue.file()).isNull();
+    assertThat(issue.line()).isNull();
+  }
+
+  @Test
+  public void sarif_v2() {
+    List<FxCopIssue> issues = parse("sarif_v2.sarif", FxCopIssueFilter.all());
+
+    assertThat(issues).hasSize(4);
+
+    FxCopIssue issue = issues.get(0);
+    assertThat(issue.reportLine()).isEqualTo(3);
+    assertThat(issue.ruleConfigKey()).isEqualTo("CA1822");
+    assertThat(issue.path()).isEqualTo("src");
+    assertThat(issue.file()).isEqualTo("Foo.cs");
+    assertThat(issue.line()).isEqualTo(42);
+    assertThat(issue.message()).isEqualTo("Member 'Foo' does not access instance data");
+
+    issue = issues.get(1);
+    assertThat(issue.ruleConfigKey()).isEqualTo("CA1823");
+    assertThat(issue.path()).isEqualTo(".");
+    assertThat(issue.file()).isEqualTo("Bar.cs");
+    assertThat(issue.line()).isEqualTo(7);
+    assertThat(issue.message()).isEqualTo("CA1823");
+
+    assertThat(issues.get(2).ruleConfigKey()).isEqualTo("CA1825");
+
+    issue = issues.get(3);
+    assertThat(issue.ruleConfigKey()).isEqualTo("CA1827");
+    assertThat(issue.path()).isEqualTo("C:\\src");
+    assertThat(issue.file()).isEqualTo("Baz.cs");
+  }
+
+  @Test
+  public void filter() {
+    List<FxCopIssue> issues = parse("sarif_v2.sarif", new FxCopIssueFilter(ImmutableList.of("CA1823", "CA1827"), 0));
+
+    assertThat(issues).hasSize(2);
+    assertThat(issues.get(0).ruleConfigKey()).isEqualTo("CA1823");
+    assertThat(issues.get(1).ruleConfigKey()).isEqualTo("CA1827");
+  }
+
+  @Test
+  public void bom() {
+    File file = new File("src/test/resources/FxCopSarifParserTest/bom.sarif");
+    assertThat(FxCopSarifParser.isSarif(file)).isTrue();
+
+    List<FxCopIssue> issues = parse("bom.sarif", FxCopIssueFilter.all());
+    assertThat(issues).hasSize(1);
+    assertThat(issues.get(0).message()).isEqualTo("With BOM");
+  }
+
+  @Test
+  public void is_sarif() {
+    assertThat(FxCopSarifParser.isSarif(new File("src/test/resources/FxCopSarifParserTest/roslyn_v1.sarif"))).isTrue();
+    assertThat(FxCopSarifParser.isSarif(new File("src/test/resources/FxCopReportParserTest/valid.xml"))).isFalse();
+    assertThat(FxCopSarifParser.isSarif(new File("src/test/resources/FxCopReportParserTest/valid_utf16.xml"))).isFalse();
+    assertThat(FxCopSarifParser.isSarif(new File("src/test/resources/FxCopSarifParserTest/non_existing.sarif"))).isFalse();
+  }
+
+  @Test
+  public void file_path() {
+    assertThat(FxCopSarifParser.filePath("file:///C:/My%20Project/Foo.cs")).isEqualTo("C:/My Project/Foo.cs");
+    assertThat(FxCopSarifParser.filePath("file:///home/user/Foo.cs")).isEqualTo("/home/user/Foo.cs");
+    assertThat(FxCopSarifParser.filePath("src/Foo%20Bar.cs")).isEqualTo("src/Foo Bar.cs");
+    assertThat(FxCopSarifParser.filePath("C:\\src\\Foo.cs")).isEqualTo("C:\\src\\Foo.cs");
+    assertThat(FxCopSarifParser.filePath("http://example.com/Foo.cs")).isEqualTo("http://example.com/Foo.cs");
+  }
+
+  @Test
+  public void missing_rule_id() {
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Missing the rule ID of the result in ");
+    thrown.expectMessage("missing_rule_id.sarif at line 5");
+
+    parse("missing_rule_id.sarif", FxCopIssueFilter.all());
+  }
+
+  @Test
+  public void invalid() {
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Expected ',' or '}'");
+    thrown.expectMessage("invalid.sarif at line 7");
+
+    parse("invalid.sarif", FxCopIssueFilter.all());
+  }
+
+  @Test
+  public void non_existing() {
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Unable to read the SARIF report: ");
+    thrown.expectMessage("non_existing.sarif");
+
+    parse("non_existing.sarif", FxCopIssueFilter.all());
+  }
+
+  private static List<FxCopIssue> parse(String name, FxCopIssueFilter filter) {
+    final List<FxCopIssue> issues = Lists.newArrayList();
+    new FxCopSarifParser().parse(new File("src/test/resources/FxCopSarifParserTest/" + name), filter, new FxCopIssueHandler() {
+      @Override
+      public void handle(FxCopIssue issue) {
+        issues.add(issue);
+      }
+    });
+    return issues;
+  }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * SonarQube FxCop Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.fxcop;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.sonar.api.batch.bootstrap.ProjectDefinition;
+import org.sonar.api.batch.bootstrap.ProjectReactor;
+import org.sonar.api.config.Settings;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class FxCopSchedulerTest {
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  private final FxCopConfiguration fxCopConf = new FxCopConfiguration("cs", "cs-fxcop", "assembly", "fxcopcmd", "timeout", "aspnet", "directories", "references");
+
+  @Test
+  public void module_settings() {
+    ProjectDefinition root = ProjectDefinition.create().setKey("root")
+      .setProperty("inherited", "root")
+      .setProperty("overridden", "root");
+    ProjectDefinition module = ProjectDefinition.create().setKey("module")
+      .setProperty("overridden", "module");
+    root.addSubProject(module);
+
+    Settings settings = new Settings();
+    settings.setProperty("global", "global");
+    settings.setProperty("inherited", "global");
+
+    Settings moduleSettings = new FxCopScheduler(new ProjectReactor(root), settings).moduleSettings(module);
+    assertThat(moduleSettings.getString("global")).isEqualTo("global");
+    assertThat(moduleSettings.getString("inherited")).isEqualTo("root");
+    assertThat(moduleSettings.getString("overridden")).isEqualTo("module");
+    assertThat(settings.hasKey("overridden")).isFalse();
+  }
+
+  @Test
+  public void launches_eligible_modules_once() {
+    ProjectDefinition root = ProjectDefinition.create().setKey("root").setWorkDir(new File("root"));
+    ProjectDefinition analyzed = ProjectDefinition.create().setKey("analyzed").setWorkDir(new File("analyzed"))
+      .setProperty("assembly", "Analyzed.dll");
+    ProjectDefinition rejected = ProjectDefinition.create().setKey("rejected").setWorkDir(new File("rejected"))
+      .setProperty("assembly", "Rejected.dll")
+      .setProperty("rejected", "true");
+    root.addSubProject(analyzed);
+    root.addSubProject(rejected);
+
+    FxCopScheduler scheduler = new FxCopScheduler(new ProjectReactor(root), new Settings());
+    RecordingJob job = new RecordingJob();
+    scheduler.launch(fxCopConf, 2, job);
+    scheduler.launch(fxCopConf, 2, job);
+
+    assertThat(scheduler.await("cs-fxcop", new File("root"))).isNull();
+    assertThat(scheduler.await("cs-fxcop", new File("rejected"))).isNull();
+    assertThat(scheduler.await("vbnet-fxcop", new File("analyzed"))).isNull();
+    assertThat(scheduler.await("cs-fxcop", new File("analyzed"))).containsExactly(new File("analyzed", "Analyzed.dll.xml"));
+    assertThat(scheduler.await("cs-fxcop", new File("analyzed"))).isNull();
+    assertThat(job.workingDirs).containsExactly(new File("analyzed"));
+  }
+
+  @Test
+  public void job_failure() {
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Job failure");
+
+    ProjectDefinition root = ProjectDefinition.create().setKey("root").setWorkDir(new File("root"))
+      .setProperty("assembly", "Root.dll");
+
+    FxCopScheduler scheduler = new FxCopScheduler(new ProjectReactor(root), new Settings());
+    scheduler.launch(fxCopConf, 1, new RecordingJob() {
+      @Override
+      public List<File> run(Settings moduleSettings, File workingDir) {
+        throw new IllegalStateException("Job failure");
+      }
+    });
+    scheduler.await("cs-fxcop", new File("root"));
+  }
+
+  @Test
+  public void job_timeout() throws Exception {
+    ProjectDefinition root = ProjectDefinition.create().setKey("root").setWorkDir(new File("root"))
+      .setProperty("assembly", "Root.dll");
+
+    final CountDownLatch interrupted = new CountDownLatch(1);
+    final List<Boolean> daemon = Collections.synchronizedList(Lists.<Boolean>newArrayList());
+    FxCopScheduler scheduler = new FxCopScheduler(new ProjectReactor(root), new Settings());
+    scheduler.launch(fxCopConf, 1, new RecordingJob() {
+      @Override
+      public long timeoutMillis(Settings moduleSettings) {
+        return 100;
+      }
+
+      @Override
+      public List<File> run(Settings moduleSettings, File workingDir) {
+        daemon.add(Thread.currentThread().isDaemon());
+        try {
+          Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+        } catch (InterruptedException e) {
+          interrupted.countDown();
+        }
+        return ImmutableList.of();
+      }
+    });
+
+    try {
+      scheduler.await("cs-fxcop", new File("root"));
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage()).contains("FxCopCmd.exe did not complete within 100 ms");
+    }
+    assertThat(interrupted.await(1, TimeUnit.MINUTES)).isTrue();
+    assertThat(daemon).containsExactly(true);
+  }
+
+  private static class RecordingJob implements FxCopScheduler.Job {
+
+    private final List<File> workingDirs = Collections.synchronizedList(Lists.<File>newArrayList());
+
+    @Override
+    public boolean accepts(ProjectDefinition module, Settings moduleSettings) {
+      return moduleSettings.hasKey("assembly") && !moduleSettings.getBoolean("rejected");
+    }
+
+    @Override
+    public long timeoutMillis(Settings moduleSettings) {
+      return TimeUnit.MINUTES.toMillis(1);
+    }
+
+    @Override
+    public List<File> run(Settings moduleSettings, File workingDir) {
+      workingDirs.add(workingDir);
+      return ImmutableList.of(new File(workingDir, moduleSettings.getString("assembly") + ".xml"));
+    }
+
+  }
+
+}
@@ -19,12 +19,25 @@
  */
 package org.sonar.plugins.fxcop;
 
+import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatcher;
+import org.mockito.InOrder;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.sonar.api.batch.SensorContext;
+import org.sonar.api.batch.bootstrap.ProjectDefinition;
+import org.sonar.api.batch.bootstrap.ProjectReactor;
 import org.sonar.api.component.ResourcePerspectives;
 import org.sonar.api.config.Settings;
 import org.sonar.api.issue.Issuable;
@@ -40,9 +53,15 @@ import org.sonar.api.scan.filesystem.ModuleFileSystem;
 
 import java.io.File;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -51,6 +70,9 @@ public class FxCopSensorTest {
   @Rule
   public ExpectedException thrown = ExpectedException.none();
 
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
   @Test
   public void shouldExecuteOnProject() {
     Settings settings = mock(Settings.class);
@@ -111,7 +133,8 @@ public class FxCopSensorTest {
 
     when(settings.getString("assemblyKey")).thenReturn("MyLibrary.dll");
     when(settings.getString("fxcopcmdPath")).thenReturn("FxCopCmd.exe");
-    when(settings.getInt("timeout")).thenReturn(42);
+    when(fxCopConf.fxCopCmdPath(settings)).thenReturn("FxCopCmd.exe");
+    when(fxCopConf.timeoutMillis(settings)).thenReturn(TimeUnit.MINUTES.toMillis(42));
     when(settings.getBoolean("aspnet")).thenReturn(true);
     when(settings.getString("directories")).thenReturn(" c:/,,  d:/ ");
     when(settings.getString("references")).thenReturn(null);
@@ -146,7 +169,7 @@ public class FxCopSensorTest {
     FxCopRulesetWriter writer = mock(FxCopRulesetWriter.class);
 
     FxCopReportParser parser = mock(FxCopReportParser.class);
-    when(parser.parse(new File(workingDir, "fxcop-report.xml"))).thenReturn(
+    mockParsedIssues(parser, new File(workingDir, "fxcop-report.xml"),
       ImmutableList.of(
         new FxCopIssue(100, "CA0000", null, "Class1.cs", 1, "Dummy message"),
         new FxCopIssue(200, "CA0000", "basePath", null, 2, "Dummy message"),
@@ -161,8 +184,9 @@ public class FxCopSensorTest {
     sensor.analyse(context, fileProvider, writer, parser, executor);
 
     verify(writer).write(ImmutableList.of("CA0000", "CA1000", "CR1000"), new File(workingDir, "fxcop-sonarqube.ruleset"));
-    verify(executor).execute("FxCopCmd.exe", "MyLibrary.dll", new File(workingDir, "fxcop-sonarqube.ruleset"), new File(workingDir, "fxcop-report.xml"), 42, true,
-      ImmutableList.of("c:/", "d:/"), ImmutableList.<String>of());
+    verify(executor).execute(Mockito.eq("FxCopCmd.exe"), Mockito.eq("MyLibrary.dll"), Mockito.eq(new File(workingDir, "fxcop-sonarqube.ruleset")),
+      Mockito.eq(new File(workingDir, "fxcop-report.xml")), timeoutOf(TimeUnit.MINUTES.toMillis(42)), Mockito.eq(true),
+      Mockito.eq(ImmutableList.of("c:/", "d:/")), Mockito.eq(ImmutableList.<String>of()));
 
     verify(issuable).addIssue(issue1);
     verify(issuable).addIssue(issue2);
@@ -181,6 +205,413 @@ public class FxCopSensorTest {
     verify(issueBuilder3).message("Sixth message");
   }
 
+  @Test
+  public void analyze_duplicated_and_unknown_rule_config_keys() throws Exception {
+    File workingDir = tmp.newFolder("working-dir");
+    SensorFixture fixture = new SensorFixture(workingDir, "CA0000", "CR0000", "CR1000", "CR1000");
+    IssueBuilder issueBuilder = mockIssueBuilder();
+    Issuable issuable = fixture.mockIssuable("Class1.cs", issueBuilder);
+    fixture.mockReport(
+      new FxCopIssue(100, "CA0000", "basePath", "Class1.cs", 1, "First message"),
+      new FxCopIssue(200, "CA9999", "basePath", "Class1.cs", 2, "Second message"));
+
+    fixture.analyse();
+
+    verify(fixture.writer).write(ImmutableList.of("CA0000", "CR0000", "CR1000"), new File(workingDir, "fxcop-sonarqube.ruleset"));
+    verify(issueBuilder).ruleKey(RuleKey.of("foo-fxcop", "_CA0000"));
+    verify(issuable, times(1)).addIssue(Mockito.any(Issue.class));
+    assertThat(Files.toString(new File(workingDir, "fxcop-metrics.json"), Charsets.UTF_8)).contains("\"unknownRuleMessages\": 1");
+  }
+
+  @Test
+  public void analyze_resolves_each_file_once() {
+    SensorFixture fixture = new SensorFixture(new File("target/FxCopSensorTest/working-dir"), "CA0000");
+    Issuable issuable = fixture.mockIssuable("Class1.cs", mockIssueBuilder());
+    when(fixture.fileProvider.fromIOFile(new File(new File("basePath"), "Class2.cs"))).thenReturn(null);
+    fixture.mockReport(
+      new FxCopIssue(100, "CA0000", "basePath", "Class1.cs", 1, "First message"),
+      new FxCopIssue(200, "CA0000", "basePath", "Class2.cs", 2, "Second message"),
+      new FxCopIssue(300, "CA0000", "basePath", "Class1.cs", 3, "Third message"),
+      new FxCopIssue(400, "CA0000", "basePath", "Class2.cs", 4, "Fourth message"));
+
+    fixture.analyse();
+
+    verify(fixture.fileProvider, times(1)).fromIOFile(new File(new File("basePath"), "Class1.cs"));
+    verify(fixture.fileProvider, times(1)).fromIOFile(new File(new File("basePath"), "Class2.cs"));
+    verify(fixture.perspectives, times(1)).as(Issuable.class, fixture.sonarFile("Class1.cs"));
+    verify(issuable, times(2)).addIssue(Mockito.any(Issue.class));
+  }
+
+  @Test
+  public void analyze_times_the_resolution_of_files_apart_from_the_parsing() throws Exception {
+    File workingDir = tmp.newFolder("working-dir");
+    SensorFixture fixture = new SensorFixture(workingDir, "CA0000");
+    when(fixture.fileProvider.fromIOFile(Mockito.any(File.class))).thenAnswer(new Answer<org.sonar.api.resources.File>() {
+      @Override
+      public org.sonar.api.resources.File answer(InvocationOnMock invocation) throws Exception {
+        Thread.sleep(200);
+        return null;
+      }
+    });
+    fixture.mockReport(new FxCopIssue(100, "CA0000", "basePath", "Class1.cs", 1, "First message"));
+
+    fixture.analyse();
+
+    String metrics = Files.toString(new File(workingDir, "fxcop-metrics.json"), Charsets.UTF_8);
+    assertThat(timing(metrics, "resolution")).isGreaterThanOrEqualTo(200);
+    assertThat(timing(metrics, "parsing")).isLessThan(200);
+  }
+
+  private static long timing(String metrics, String stage) {
+    Matcher matcher = Pattern.compile("\"" + stage + "\": (\\d++)").matcher(metrics);
+    assertThat(matcher.find()).isTrue();
+    return Long.parseLong(matcher.group(1));
+  }
+
+  @Test
+  public void analyze_submits_issues_grouped_by_file_in_line_order_without_duplicates() {
+    SensorFixture fixture = new SensorFixture(new File("target/FxCopSensorTest/working-dir"), "CA0000");
+    IssueBuilder issueBuilder = mockIssueBuilder();
+    Issuable issuable1 = fixture.mockIssuable("Class1.cs", issueBuilder);
+    Issuable issuable2 = fixture.mockIssuable("Class2.cs", issueBuilder);
+    fixture.mockReport(
+      new FxCopIssue(100, "CA0000", "basePath", "Class1.cs", 5, "Class1 line 5"),
+      new FxCopIssue(200, "CA0000", "basePath", "Class2.cs", 3, "Class2 line 3"),
+      new FxCopIssue(300, "CA0000", "basePath", "Class1.cs", 2, "Class1 line 2"),
+      new FxCopIssue(400, "CA0000", "basePath", "Class2.cs", 1, "Class2 line 1"),
+      new FxCopIssue(500, "CA0000", "basePath", "Class1.cs", 5, "Class1 line 5 again"),
+      new FxCopIssue(600, "CA0000", "basePath", "Class1.cs", 5, "Class1 line 5"),
+      new FxCopIssue(700, "CA0000", "basePath", "Class2.cs", 1, "Class2 line 1"));
+
+    fixture.analyse();
+
+    InOrder inOrder = Mockito.inOrder(issueBuilder);
+    inOrder.verify(issueBuilder).message("Class1 line 2");
+    inOrder.verify(issueBuilder).message("Class1 line 5");
+    inOrder.verify(issueBuilder).message("Class1 line 5 again");
+    inOrder.verify(issueBuilder).message("Class2 line 1");
+    inOrder.verify(issueBuilder).message("Class2 line 3");
+    verify(issuable1, times(3)).addIssue(Mockito.any(Issue.class));
+    verify(issuable2, times(2)).addIssue(Mockito.any(Issue.class));
+  }
+
+  @Test
+  public void analyze_submits_the_buffered_issues_when_too_many_are_buffered() {
+    SensorFixture fixture = new SensorFixture(new File("target/FxCopSensorTest/working-dir"), "CA0000");
+    IssueBuilder issueBuilder = mockIssueBuilder();
+    Issuable issuable = fixture.mockIssuable("Class1.cs", issueBuilder);
+
+    // The issues of a full buffer are submitted before the next ones, even those of lower lines
+    List<FxCopIssue> issues = Lists.newArrayList();
+    for (int line = FxCopSensor.MAX_BUFFERED_ISSUES + 1; line >= 1; line--) {
+      issues.add(new FxCopIssue(line, "CA0000", "basePath", "Class1.cs", line, "Line " + line));
+    }
+    fixture.mockReport(issues.toArray(new FxCopIssue[issues.size()]));
+
+    fixture.analyse();
+
+    InOrder inOrder = Mockito.inOrder(issueBuilder);
+    inOrder.verify(issueBuilder).line(2);
+    inOrder.verify(issueBuilder).line(FxCopSensor.MAX_BUFFERED_ISSUES + 1);
+    inOrder.verify(issueBuilder).line(1);
+    verify(issuable, times(FxCopSensor.MAX_BUFFERED_ISSUES + 1)).addIssue(Mockito.any(Issue.class));
+  }
+
+  @Test
+  public void analyze_pipelined() {
+    SensorFixture fixture = new SensorFixture(new File("target/FxCopSensorTest/working-dir"), "CA0000");
+    when(fixture.fxCopConf.pipelinedPropertyKey()).thenReturn("pipelined");
+    when(fixture.settings.getBoolean("pipelined")).thenReturn(true);
+    Issuable issuable = fixture.mockIssuable("Class1.cs", mockIssueBuilder());
+    when(fixture.fileProvider.fromIOFile(new File(new File("basePath"), "Class2.cs"))).thenReturn(null);
+    fixture.mockReport(
+      new FxCopIssue(100, "CA0000", "basePath", "Class1.cs", 1, "First message"),
+      new FxCopIssue(200, "CA0000", "basePath", "Class2.cs", 2, "Second message"),
+      new FxCopIssue(300, "CA0000", "basePath", "Class1.cs", 3, "Third message"),
+      new FxCopIssue(400, "CA0000", "basePath", "Class2.cs", 4, "Fourth message"));
+
+    fixture.analyse();
+
+    verify(fixture.fileProvider, times(1)).fromIOFile(new File(new File("basePath"), "Class1.cs"));
+    verify(fixture.fileProvider, times(1)).fromIOFile(new File(new File("basePath"), "Class2.cs"));
+    verify(fixture.perspectives, times(1)).as(Issuable.class, fixture.sonarFile("Class1.cs"));
+    verify(issuable, times(2)).addIssue(Mockito.any(Issue.class));
+  }
+
+  @Test
+  public void analyze_multiple_assemblies() {
+    File workingDir = new File("target/FxCopSensorTest/working-dir");
+    SensorFixture fixture = new SensorFixture(workingDir, "CA0000");
+    when(fixture.fxCopConf.timeoutPropertyKey()).thenReturn("timeout");
+    when(fixture.fxCopConf.parallelismPropertyKey()).thenReturn("parallelism");
+    when(fixture.settings.getString("assemblyKey")).thenReturn("MyLibrary1.dll, MyLibrary2.dll");
+    when(fixture.fxCopConf.timeoutMillis(fixture.settings)).thenReturn(TimeUnit.MINUTES.toMillis(42));
+    when(fixture.settings.getInt("parallelism")).thenReturn(3);
+    IssueBuilder issueBuilder = mockIssueBuilder();
+    Issuable issuable = fixture.mockIssuable("Class1.cs", issueBuilder);
+    mockParsedReports(fixture.parser, 3, ImmutableMap.<File, List<FxCopIssue>>of(
+      new File(workingDir, "fxcop-report-0.xml"), ImmutableList.of(new FxCopIssue(100, "CA0000", "basePath", "Class1.cs", 1, "First message")),
+      new File(workingDir, "fxcop-report-1.xml"), ImmutableList.of(new FxCopIssue(100, "CA0000", "basePath", "Class1.cs", 2, "Second message"))));
+
+    fixture.analyse();
+
+    verify(fixture.executor).execute(Mockito.eq("FxCopCmd.exe"), Mockito.eq(ImmutableList.of("MyLibrary1.dll", "MyLibrary2.dll")),
+      Mockito.eq(new File(workingDir, "fxcop-sonarqube.ruleset")),
+      Mockito.eq(ImmutableList.of(new File(workingDir, "fxcop-report-0.xml"), new File(workingDir, "fxcop-report-1.xml"))), timeoutOf(TimeUnit.MINUTES.toMillis(42)),
+      Mockito.eq(false), Mockito.eq(ImmutableList.<String>of()), Mockito.eq(ImmutableList.<String>of()), Mockito.eq(3));
+    verify(issueBuilder).message("First message");
+    verify(issueBuilder).message("Second message");
+    verify(issuable, times(2)).addIssue(Mockito.any(Issue.class));
+  }
+
+  @Test
+  public void analyze_skips_fxcopcmd_when_inputs_are_unchanged() throws Exception {
+    File workingDir = tmp.newFolder("working-dir");
+    SensorFixture fixture = new SensorFixture(workingDir, "CA0000");
+    File assembly = tmp.newFile("MyLibrary.dll");
+    Files.write("assembly", assembly, Charsets.UTF_8);
+    when(fixture.settings.getString("assemblyKey")).thenReturn(assembly.getAbsolutePath());
+    final File reportFile = new File(workingDir, "fxcop-report.xml");
+
+    FxCopExecutor executor = fixture.executor;
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Exception {
+        Files.write("<FxCopReport />", reportFile, Charsets.UTF_8);
+        return null;
+      }
+    }).when(executor).execute(Mockito.anyString(), Mockito.anyString(), Mockito.any(File.class), Mockito.eq(reportFile), Mockito.any(FxCopTimeout.class), Mockito.anyBoolean(),
+      Mockito.anyListOf(String.class), Mockito.anyListOf(String.class));
+
+    fixture.analyse();
+    fixture.analyse();
+    verify(executor, times(1)).execute(Mockito.anyString(), Mockito.anyString(), Mockito.any(File.class), Mockito.eq(reportFile), Mockito.any(FxCopTimeout.class), Mockito.anyBoolean(),
+      Mockito.anyListOf(String.class), Mockito.anyListOf(String.class));
+    verify(fixture.parser, times(2)).parse(Mockito.eq(reportFile), Mockito.any(FxCopIssueFilter.class), Mockito.any(FxCopIssueHandler.class), Mockito.anyInt());
+    String metrics = Files.toString(new File(workingDir, "fxcop-metrics.json"), Charsets.UTF_8);
+    assertThat(metrics).contains("\"rulesetWriting\"");
+    assertThat(metrics).excludes("\"fxCopCmd\"");
+    assertThat(metrics).contains("\"issuesParsed\": 0");
+
+    Files.write("modified assembly", assembly, Charsets.UTF_8);
+    fixture.analyse();
+    verify(executor, times(2)).execute(Mockito.anyString(), Mockito.anyString(), Mockito.any(File.class), Mockito.eq(reportFile), Mockito.any(FxCopTimeout.class), Mockito.anyBoolean(),
+      Mockito.anyListOf(String.class), Mockito.anyListOf(String.class));
+
+    List<ActiveRule> activeRules = mockActiveRules("CA0000", "CA1000");
+    when(fixture.profile.getActiveRulesByRepository("foo-fxcop")).thenReturn(activeRules);
+    fixture.analyse();
+    verify(executor, times(3)).execute(Mockito.anyString(), Mockito.anyString(), Mockito.any(File.class), Mockito.eq(reportFile), Mockito.any(FxCopTimeout.class), Mockito.anyBoolean(),
+      Mockito.anyListOf(String.class), Mockito.anyListOf(String.class));
+  }
+
+  @Test
+  public void analyze_reuses_reports_of_other_workspaces_from_the_cache() throws Exception {
+    FxCopConfiguration fxCopConf = mock(FxCopConfiguration.class);
+    when(fxCopConf.languageKey()).thenReturn("foo");
+    when(fxCopConf.repositoryKey()).thenReturn("foo-fxcop");
+    when(fxCopConf.assemblyPropertyKey()).thenReturn("assemblyKey");
+    when(fxCopConf.reportCache(Mockito.any(Settings.class))).thenReturn(new FxCopReportCache(tmp.newFolder("cache"), 1024 * 1024));
+    RulesProfile profile = mock(RulesProfile.class);
+    List<ActiveRule> activeRules = mockActiveRules("CA0000");
+    when(profile.getActiveRulesByRepository("foo-fxcop")).thenReturn(activeRules);
+
+    FxCopExecutor executor = mock(FxCopExecutor.class);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Exception {
+        Files.write("<FxCopReport />", (File) invocation.getArguments()[3], Charsets.UTF_8);
+        return null;
+      }
+    }).when(executor).execute(Mockito.anyString(), Mockito.anyString(), Mockito.any(File.class), Mockito.any(File.class), Mockito.any(FxCopTimeout.class),
+      Mockito.anyBoolean(), Mockito.anyListOf(String.class), Mockito.anyListOf(String.class));
+
+    List<File> reportFiles = Lists.newArrayList();
+    for (String workspace : ImmutableList.of("first-workspace", "second-workspace")) {
+      File directory = tmp.newFolder(workspace);
+      File assembly = new File(directory, "MyLibrary.dll");
+      Files.write("assembly", assembly, Charsets.UTF_8);
+      Settings settings = mock(Settings.class);
+      when(settings.getString("assemblyKey")).thenReturn(assembly.getAbsolutePath());
+      when(fxCopConf.fxCopCmdPath(settings)).thenReturn("FxCopCmd.exe");
+      ModuleFileSystem fileSystem = mock(ModuleFileSystem.class);
+      File workingDir = new File(directory, "working-dir");
+      assertThat(workingDir.mkdir()).isTrue();
+      when(fileSystem.workingDir()).thenReturn(workingDir);
+
+      new FxCopSensor(fxCopConf, settings, profile, fileSystem, mock(ResourcePerspectives.class))
+        .analyse(mock(SensorContext.class), mock(FileProvider.class), mock(FxCopRulesetWriter.class), mock(FxCopReportParser.class), executor);
+      reportFiles.add(new File(workingDir, "fxcop-report.xml"));
+    }
+
+    verify(executor, times(1)).execute(Mockito.anyString(), Mockito.anyString(), Mockito.any(File.class), Mockito.eq(reportFiles.get(0)),
+      Mockito.any(FxCopTimeout.class), Mockito.anyBoolean(), Mockito.anyListOf(String.class), Mockito.anyListOf(String.class));
+    Mockito.verifyNoMoreInteractions(executor);
+    assertThat(Files.toString(reportFiles.get(1), Charsets.UTF_8)).isEqualTo("<FxCopReport />");
+  }
+
+  @Test
+  public void analyze_imported_reports() {
+    SensorFixture fixture = new SensorFixture(new File("target/FxCopSensorTest/working-dir"), "CA0000");
+    Settings settings = fixture.settings;
+    when(fixture.fxCopConf.reportPathsPropertyKey()).thenReturn("reportPaths");
+    when(fixture.fxCopConf.parallelismPropertyKey()).thenReturn("parallelism");
+    when(settings.getInt("parallelism")).thenReturn(2);
+    when(fixture.fxCopConf.minimumCertaintyPropertyKey()).thenReturn("minimumCertainty");
+    when(settings.getInt("minimumCertainty")).thenReturn(75);
+    when(fixture.fxCopConf.isReportImport(settings)).thenReturn(true);
+    when(settings.getString("reportPaths")).thenReturn("a.CodeAnalysisLog.xml, b.CodeAnalysisLog.xml");
+    IssueBuilder issueBuilder = mockIssueBuilder();
+    Issuable issuable = fixture.mockIssuable("Class1.cs", issueBuilder);
+    mockParsedReports(fixture.parser, 2, ImmutableMap.<File, List<FxCopIssue>>of(
+      new File("a.CodeAnalysisLog.xml"), ImmutableList.of(
+        new FxCopIssue(100, "CA0000", "basePath", "Class1.cs", 1, "First message"),
+        new FxCopIssue(200, "CA9999", "basePath", "Class1.cs", 2, "Inactive rule message")),
+      new File("b.CodeAnalysisLog.xml"), ImmutableList.of(new FxCopIssue(100, "CA0000", "basePath", "Class1.cs", 3, "Second message"))));
+
+    fixture.analyse();
+
+    verify(fixture.fxCopConf).checkProperties(settings);
+    Mockito.verifyZeroInteractions(fixture.writer, fixture.executor);
+    verify(issueBuilder).message("First message");
+    verify(issueBuilder).message("Second message");
+    verify(issueBuilder, Mockito.never()).message("Inactive rule message");
+    verify(issuable, times(2)).addIssue(Mockito.any(Issue.class));
+
+    ArgumentCaptor<FxCopIssueFilter> filter = ArgumentCaptor.forClass(FxCopIssueFilter.class);
+    verify(fixture.parser).parse(Mockito.anyListOf(File.class), filter.capture(), Mockito.any(FxCopIssueHandler.class), Mockito.anyInt());
+    assertThat(filter.getValue().acceptsRuleConfigKey("CA0000")).isTrue();
+    assertThat(filter.getValue().acceptsRuleConfigKey("CA9999")).isFalse();
+    assertThat(filter.getValue().acceptsCertainty(75)).isTrue();
+    assertThat(filter.getValue().acceptsCertainty(74)).isFalse();
+  }
+
+  @Test
+  public void analyze_waits_for_the_module_launched_by_the_scheduler() {
+    Settings settings = mock(Settings.class);
+    RulesProfile profile = mock(RulesProfile.class);
+    ModuleFileSystem fileSystem = mock(ModuleFileSystem.class);
+    FxCopConfiguration fxCopConf = mock(FxCopConfiguration.class);
+    when(fxCopConf.languageKey()).thenReturn("foo");
+    when(fxCopConf.repositoryKey()).thenReturn("foo-fxcop");
+    when(fxCopConf.assemblyPropertyKey()).thenReturn("assemblyKey");
+    when(fxCopConf.timeoutPropertyKey()).thenReturn("timeout");
+    when(fxCopConf.parallelismPropertyKey()).thenReturn("parallelism");
+    when(settings.getInt("parallelism")).thenReturn(2);
+    when(fxCopConf.timeoutMillis(Mockito.any(Settings.class))).thenAnswer(new Answer<Long>() {
+      @Override
+      public Long answer(InvocationOnMock invocation) {
+        return TimeUnit.MINUTES.toMillis(((Settings) invocation.getArguments()[0]).getInt("timeout"));
+      }
+    });
+    when(fxCopConf.fxCopCmdPath(Mockito.any(Settings.class))).thenAnswer(new Answer<String>() {
+      @Override
+      public String answer(InvocationOnMock invocation) {
+        return ((Settings) invocation.getArguments()[0]).getString("fxcopcmdPath");
+      }
+    });
+
+    List<ActiveRule> activeRules = mockActiveRules("CA0000");
+    when(profile.getActiveRulesByRepository("foo-fxcop")).thenReturn(activeRules);
+
+    File firstWorkingDir = new File(tmp.getRoot(), "first");
+    File secondWorkingDir = new File(tmp.getRoot(), "second");
+    File otherWorkingDir = new File(tmp.getRoot(), "other");
+    ProjectDefinition root = ProjectDefinition.create().setKey("root").setWorkDir(new File(tmp.getRoot(), "root"))
+      .setProperty("fxcopcmdPath", "FxCopCmd.exe");
+    root.addSubProject(ProjectDefinition.create().setKey("first").setWorkDir(firstWorkingDir).setSourceDirs("src")
+      .setProperty("sonar.language", "foo")
+      .setProperty("assemblyKey", "First.dll")
+      .setProperty("timeout", "10"));
+    root.addSubProject(ProjectDefinition.create().setKey("second").setWorkDir(secondWorkingDir).setSourceDirs("src")
+      .setProperty("sonar.language", "foo")
+      .setProperty("assemblyKey", "Second.dll")
+      .setProperty("timeout", "20"));
+    root.addSubProject(ProjectDefinition.create().setKey("other").setWorkDir(otherWorkingDir).setSourceDirs("src")
+      .setProperty("sonar.language", "bar")
+      .setProperty("assemblyKey", "Other.dll"));
+    FxCopScheduler scheduler = new FxCopScheduler(new ProjectReactor(root), new Settings());
+
+    when(fileSystem.workingDir()).thenReturn(firstWorkingDir);
+    FxCopReportParser parser = mock(FxCopReportParser.class);
+    FxCopRulesetWriter writer = mock(FxCopRulesetWriter.class);
+    FxCopExecutor executor = mock(FxCopExecutor.class);
+    new FxCopSensor(fxCopConf, settings, profile, fileSystem, mock(ResourcePerspectives.class), scheduler)
+      .analyse(mock(SensorContext.class), mock(FileProvider.class), writer, parser, executor);
+
+    verify(parser).parse(Mockito.eq(new File(firstWorkingDir, "fxcop-report.xml")), Mockito.any(FxCopIssueFilter.class), Mockito.any(FxCopIssueHandler.class),
+      Mockito.anyInt());
+    assertThat(scheduler.await("foo-fxcop", secondWorkingDir)).containsExactly(new File(secondWorkingDir, "fxcop-report.xml"));
+    assertThat(scheduler.await("foo-fxcop", otherWorkingDir)).isNull();
+    verify(executor).execute(Mockito.eq("FxCopCmd.exe"), Mockito.eq("Second.dll"), Mockito.eq(new File(secondWorkingDir, "fxcop-sonarqube.ruleset")),
+      Mockito.eq(new File(secondWorkingDir, "fxcop-report.xml")), timeoutOf(TimeUnit.MINUTES.toMillis(20)), Mockito.eq(false),
+      Mockito.eq(ImmutableList.<String>of()), Mockito.eq(ImmutableList.<String>of()));
+    verify(executor).execute(Mockito.eq("FxCopCmd.exe"), Mockito.eq("First.dll"), Mockito.eq(new File(firstWorkingDir, "fxcop-sonarqube.ruleset")),
+      Mockito.eq(new File(firstWorkingDir, "fxcop-report.xml")), timeoutOf(TimeUnit.MINUTES.toMillis(10)), Mockito.eq(false),
+      Mockito.eq(ImmutableList.<String>of()), Mockito.eq(ImmutableList.<String>of()));
+    verify(writer).write(ImmutableList.of("CA0000"), new File(firstWorkingDir, "fxcop-sonarqube.ruleset"));
+    assertThat(secondWorkingDir).isDirectory();
+  }
+
+  @Test
+  public void analyze_replays_the_issue_file_when_reports_are_unchanged() throws Exception {
+    File workingDir = tmp.newFolder("working-dir");
+    SensorFixture fixture = new SensorFixture(workingDir, "CA0000");
+    when(fixture.fxCopConf.reportPathsPropertyKey()).thenReturn("reportPaths");
+    when(fixture.fxCopConf.issueFilePropertyKey()).thenReturn("issueFile");
+    when(fixture.fxCopConf.isReportImport(fixture.settings)).thenReturn(true);
+    File reportFile = tmp.newFile("MyLibrary.CodeAnalysisLog.xml");
+    Files.write("<FxCopReport />", reportFile, Charsets.UTF_8);
+    when(fixture.settings.getString("reportPaths")).thenReturn(reportFile.getAbsolutePath());
+    when(fixture.settings.getBoolean("issueFile")).thenReturn(true);
+    IssueBuilder issueBuilder = mockIssueBuilder();
+    Issuable issuable = fixture.mockIssuable("Class1.cs", issueBuilder);
+    FxCopReportParser parser = fixture.parser;
+    mockParsedIssues(parser, reportFile, ImmutableList.of(
+      new FxCopIssue(100, "CA0000", "basePath", "Class1.cs", 1, "First message"),
+      new FxCopIssue(200, "CA9999", "basePath", "Class1.cs", 2, "Inactive rule message")));
+
+    fixture.analyse();
+    fixture.analyse();
+
+    verify(parser, times(1)).parse(Mockito.eq(reportFile), Mockito.any(FxCopIssueFilter.class), Mockito.any(FxCopIssueHandler.class), Mockito.anyInt());
+    verify(issueBuilder, times(2)).message("First message");
+    verify(issueBuilder, Mockito.never()).message("Inactive rule message");
+    verify(issuable, times(2)).addIssue(Mockito.any(Issue.class));
+    assertThat(new FxCopIssueFile.Reader(new File(workingDir, "fxcop-issues.bin")).size()).isEqualTo(1);
+
+    Files.write("<FxCopReport Version=\"10.0\" />", reportFile, Charsets.UTF_8);
+    fixture.analyse();
+    verify(parser, times(2)).parse(Mockito.eq(reportFile), Mockito.any(FxCopIssueFilter.class), Mockito.any(FxCopIssueHandler.class), Mockito.anyInt());
+  }
+
+  @Test
+  public void analyze_imported_sarif_reports() throws Exception {
+    SensorFixture fixture = new SensorFixture(tmp.newFolder("working-dir"), "CA0000");
+    when(fixture.fxCopConf.reportPathsPropertyKey()).thenReturn("reportPaths");
+    when(fixture.fxCopConf.isReportImport(fixture.settings)).thenReturn(true);
+    File sarifFile = tmp.newFile("MyLibrary.sarif");
+    Files.write("{\"runs\": [{\"results\": [\n"
+      + "{\"ruleId\": \"CA0000\", \"message\": {\"text\": \"SARIF message\"},"
+      + " \"locations\": [{\"physicalLocation\": {\"artifactLocation\": {\"uri\": \"basePath/Class1.cs\"}, \"region\": {\"startLine\": 3}}}]},\n"
+      + "{\"ruleId\": \"CA9999\", \"message\": {\"text\": \"Inactive rule message\"}}]}]}", sarifFile, Charsets.UTF_8);
+    File xmlFile = tmp.newFile("MyLibrary.CodeAnalysisLog.xml");
+    Files.write("<FxCopReport />", xmlFile, Charsets.UTF_8);
+    when(fixture.settings.getString("reportPaths")).thenReturn(sarifFile.getAbsolutePath() + "," + xmlFile.getAbsolutePath());
+    IssueBuilder issueBuilder = mockIssueBuilder();
+    Issuable issuable = fixture.mockIssuable("Class1.cs", issueBuilder);
+    mockParsedIssues(fixture.parser, xmlFile, ImmutableList.of(new FxCopIssue(100, "CA0000", "basePath", "Class1.cs", 1, "XML message")));
+
+    fixture.analyse();
+
+    verify(fixture.parser, Mockito.never()).parse(Mockito.eq(sarifFile), Mockito.any(FxCopIssueFilter.class), Mockito.any(FxCopIssueHandler.class), Mockito.anyInt());
+    verify(issueBuilder).message("SARIF message");
+    verify(issueBuilder).line(3);
+    verify(issueBuilder).message("XML message");
+    verify(issueBuilder, Mockito.never()).message("Inactive rule message");
+    verify(issuable, times(2)).addIssue(Mockito.any(Issue.class));
+  }
+
   @Test
   public void check_properties() {
     thrown.expectMessage("fooAssemblyKey");
@@ -190,6 +621,71 @@ public class FxCopSensorTest {
       .analyse(mock(Project.class), mock(SensorContext.class));
   }
 
+  /**
+   * Mocks of a sensor running FxCopCmd.exe on "MyLibrary.dll", with the given active rules of the "foo-fxcop" repository.
+   */
+  private static class SensorFixture {
+
+    private final Settings settings = mock(Settings.class);
+    private final RulesProfile profile = mock(RulesProfile.class);
+    private final ModuleFileSystem fileSystem = mock(ModuleFileSystem.class);
+    private final ResourcePerspectives perspectives = mock(ResourcePerspectives.class);
+    private final FxCopConfiguration fxCopConf = mock(FxCopConfiguration.class);
+    private final FileProvider fileProvider = mock(FileProvider.class);
+    private final FxCopRulesetWriter writer = mock(FxCopRulesetWriter.class);
+    private final FxCopReportParser parser = mock(FxCopReportParser.class);
+    private final FxCopExecutor executor = mock(FxCopExecutor.class);
+    private final Map<String, org.sonar.api.resources.File> sonarFiles = Maps.newHashMap();
+    private final File workingDir;
+
+    public SensorFixture(File workingDir, String... activeConfigRuleKeys) {
+      this.workingDir = workingDir;
+      when(fxCopConf.languageKey()).thenReturn("foo");
+      when(fxCopConf.repositoryKey()).thenReturn("foo-fxcop");
+      when(fxCopConf.assemblyPropertyKey()).thenReturn("assemblyKey");
+      when(settings.getString("assemblyKey")).thenReturn("MyLibrary.dll");
+      when(fxCopConf.fxCopCmdPath(settings)).thenReturn("FxCopCmd.exe");
+      when(fileSystem.workingDir()).thenReturn(workingDir);
+
+      List<ActiveRule> activeRules = mockActiveRules(activeConfigRuleKeys);
+      when(profile.getActiveRulesByRepository("foo-fxcop")).thenReturn(activeRules);
+    }
+
+    /**
+     * Resolves the file of the "basePath" directory to a file of the "foo" language, whose issues are created by the given builder.
+     */
+    public Issuable mockIssuable(String fileName, IssueBuilder issueBuilder) {
+      org.sonar.api.resources.File sonarFile = mockSonarFile("foo");
+      sonarFiles.put(fileName, sonarFile);
+      when(fileProvider.fromIOFile(new File(new File("basePath"), fileName))).thenReturn(sonarFile);
+
+      Issuable issuable = mock(Issuable.class);
+      when(perspectives.as(Issuable.class, sonarFile)).thenReturn(issuable);
+      when(issuable.newIssueBuilder()).thenReturn(issueBuilder);
+      return issuable;
+    }
+
+    public org.sonar.api.resources.File sonarFile(String fileName) {
+      return sonarFiles.get(fileName);
+    }
+
+    /**
+     * The issues of the report written by FxCopCmd.exe into the working directory.
+     */
+    public void mockReport(FxCopIssue... issues) {
+      mockParsedIssues(parser, new File(workingDir, "fxcop-report.xml"), ImmutableList.copyOf(issues));
+    }
+
+    public FxCopSensor sensor() {
+      return new FxCopSensor(fxCopConf, settings, profile, fileSystem, perspectives);
+    }
+
+    public void analyse() {
+      sensor().analyse(mock(SensorContext.class), fileProvider, writer, parser, executor);
+    }
+
+  }
+
   private static org.sonar.api.resources.File mockSonarFile(String languageKey) {
     Language language = mock(Language.class);
     when(language.getKey()).thenReturn(languageKey);
@@ -198,6 +694,50 @@ public class FxCopSensorTest {
     return sonarFile;
   }
 
+  private static void mockParsedReports(FxCopReportParser parser, int parallelism, final Map<File, List<FxCopIssue>> issuesByReport) {
+    doAnswer(new Answer<Void>() {
+      @Override
+      @SuppressWarnings("unchecked")
+      public Void answer(InvocationOnMock invocation) {
+        FxCopIssueFilter filter = (FxCopIssueFilter) invocation.getArguments()[1];
+        FxCopIssueHandler handler = (FxCopIssueHandler) invocation.getArguments()[2];
+        for (File reportFile : (List<File>) invocation.getArguments()[0]) {
+          handleIssues(filter, handler, issuesByReport.get(reportFile));
+        }
+        return null;
+      }
+    }).when(parser).parse(Mockito.eq(ImmutableList.copyOf(issuesByReport.keySet())), Mockito.any(FxCopIssueFilter.class), Mockito.any(FxCopIssueHandler.class),
+      Mockito.eq(parallelism));
+  }
+
+  private static void mockParsedIssues(FxCopReportParser parser, File reportFile, final List<FxCopIssue> issues) {
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        handleIssues((FxCopIssueFilter) invocation.getArguments()[1], (FxCopIssueHandler) invocation.getArguments()[2], issues);
+        return null;
+      }
+    }).when(parser).parse(Mockito.eq(reportFile), Mockito.any(FxCopIssueFilter.class), Mockito.any(FxCopIssueHandler.class), Mockito.anyInt());
+  }
+
+  private static void handleIssues(FxCopIssueFilter filter, FxCopIssueHandler handler, List<FxCopIssue> issues) {
+    for (FxCopIssue issue : issues) {
+      if (filter.acceptsRuleConfigKey(issue.ruleConfigKey())) {
+        handler.handle(issue);
+      }
+    }
+  }
+
+
+  private static FxCopTimeout timeoutOf(final long configuredMillis) {
+    return Mockito.argThat(new ArgumentMatcher<FxCopTimeout>() {
+      @Override
+      public boolean matches(Object argument) {
+        return ((FxCopTimeout) argument).configuredMillis() == configuredMillis;
+      }
+    });
+  }
+
   private static IssueBuilder mockIssueBuilder() {
     IssueBuilder issueBuilder = mock(IssueBuilder.class);
     when(issueBuilder.ruleKey(Mockito.any(RuleKey.class))).thenReturn(issueBuilder);
@@ -0,0 +1,114 @@
+/*
+ * SonarQube FxCop Library
+ * Copyright (C) 2014 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.fxcop;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class FxCopTimeoutTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void fixed() {
+    FxCopTimeout timeout = FxCopTimeout.fixed(42000);
+    assertThat(timeout.configuredMillis()).isEqualTo(42000);
+    assertThat(timeout.isAdaptive()).isFalse();
+    assertThat(timeout.millisFor("MyLibrary.dll")).isEqualTo(42000);
+    timeout.record("MyLibrary.dll", 1000);
+  }
+
+  @Test
+  public void adaptive_falls_back_to_configured_timeout_without_enough_runs() throws Exception {
+    File assembly = assembly(100);
+    FxCopRunHistory history = new FxCopRunHistory(new File(tmp.getRoot(), "fxcop-history.tsv"));
+    FxCopTimeout timeout = new FxCopTimeout(600000, history, 10, true);
+
+    for (int i = 0; i < 4; i++) {
+      assertThat(timeout.millisFor(assembly.getPath())).isEqualTo(600000);
+      timeout.record(assembly.getPath(), 1000);
+    }
+    timeout.record(assembly.getPath(), 1000);
+    assertThat(timeout.millisFor(assembly.getPath())).isEqualTo(31000);
+  }
+
+  @Test
+  public void non_adaptive_still_records() throws Exception {
+    File assembly = assembly(100);
+    FxCopRunHistory history = new FxCopRunHistory(new File(tmp.getRoot(), "fxcop-history.tsv"));
+    FxCopTimeout timeout = new FxCopTimeout(600000, history, 10, false);
+
+    for (int i = 0; i < 10; i++) {
+      timeout.record(assembly.getPath(), 1000);
+    }
+    assertThat(timeout.millisFor(assembly.getPath())).isEqualTo(600000);
+    assertThat(history.runs()).hasSize(10);
+    assertThat(history.runs().get(0).assemblyBytes()).isEqualTo(100);
+    assertThat(history.runs().get(0).ruleCount()).isEqualTo(10);
+  }
+
+  @Test
+  public void adaptive_is_bounded_by_configured_timeout() throws Exception {
+    File assembly = assembly(100);
+    FxCopRunHistory history = new FxCopRunHistory(new File(tmp.getRoot(), "fxcop-history.tsv"));
+    FxCopTimeout timeout = new FxCopTimeout(60000, history, 10, true);
+    for (int i = 0; i < 5; i++) {
+      timeout.record(assembly.getPath(), 50000);
+    }
+
+    assertThat(timeout.millisFor(assembly.getPath())).isEqualTo(60000);
+  }
+
+  @Test
+  public void adaptive_millis() {
+    List<FxCopRunHistory.Run> runs = Lists.newArrayList();
+    for (int i = 1; i <= 100; i++) {
+      runs.add(new FxCopRunHistory.Run(i * 1000, 100, 10));
+    }
+
+    // 99th percentile is 99s, plus 50%
+    assertThat(FxCopTimeout.adaptiveMillis(runs, 100, 10)).isEqualTo(148500);
+    // Smaller assemblies and fewer rules do not lower the timeout
+    assertThat(FxCopTimeout.adaptiveMillis(runs, 50, 5)).isEqualTo(148500);
+    // Twice larger assemblies and twice more rules
+    assertThat(FxCopTimeout.adaptiveMillis(runs, 200, 10)).isEqualTo(297000);
+    assertThat(FxCopTimeout.adaptiveMillis(runs, 200, 20)).isEqualTo(594000);
+    // The margin is of at least 30s
+    assertThat(FxCopTimeout.adaptiveMillis(ImmutableList.of(new FxCopRunHistory.Run(2000, 100, 10)), 100, 10)).isEqualTo(32000);
+  }
+
+  private File assembly(int size) throws Exception {
+    File assembly = tmp.newFile("MyLibrary.dll");
+    Files.write(new byte[size], assembly);
+    return assembly;
+  }
+
+}